@@ -0,0 +1,248 @@
+package com.esc.msu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.mp.PduHandle;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.security.SecurityModel;
+import org.snmp4j.smi.Counter32;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.IpAddress;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * JMH benchmarks of the SNMP Gateway's hot paths- decoding SNMP v1, v2c and
+ * INFORM notification PDUs into SnmpGatewayEvents, building the event data
+ * of a notification in SnmpGateway.inboundMessage(), classifying a
+ * notification with getNotificationType(), and building the varbind map of
+ * an SnmpGatewayResponse.
+ * <p>
+ * Build and run from the benchmark directory with
+ * <pre>
+ *   mvn -B package
+ *   mvn -B exec:exec [-Dbenchmark.results=results.json]
+ * </pre>
+ * which runs every benchmark with the GC profiler, so that allocation per
+ * operation is reported alongside time, and writes the results as JSON for
+ * comparison across commits.  The gateway is constructed with the stub
+ * GatewayServices of the benchmark module, which accepts every event, and
+ * one CFC listener, so inboundMessage() builds the event data, dispatches
+ * the listener's CFEvent to GatewayServices.addEvent() and records the
+ * dispatch metrics, as the running gateway does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SnmpGatewayBenchmark {
+
+	private final static OID ifIndex       = new OID("1.3.6.1.2.1.2.2.1.1.3");
+	private final static OID ifAdminStatus = new OID("1.3.6.1.2.1.2.2.1.7.3");
+	private final static OID ifOperStatus  = new OID("1.3.6.1.2.1.2.2.1.8.3");
+	private final static OID linkDown      = new OID("1.3.6.1.6.3.1.1.5.3");
+	private final static OID enterprise    = new OID("1.3.6.1.4.1.9999.1.2");
+
+	private final MessageDispatcherImpl dispatcher = new MessageDispatcherImpl();
+	private final UdpAddress peer = new UdpAddress("192.0.2.10/1162");
+	private final byte[] community = "public".getBytes();
+
+	private byte[] v1Trap;
+	private byte[] v2cTrap;
+	private byte[] inform;
+	private SnmpGatewayEvent v2cEvent;
+	private SnmpGatewayEvent enterpriseEvent;
+	private SnmpGateway gateway;
+	private SnmpGatewayResponse response;
+
+	@Setup
+	public void setup() throws IOException {
+		PDUv1 v1 = new PDUv1();
+		v1.setType(PDU.V1TRAP);
+		v1.setEnterprise(SnmpGatewayBenchmark.enterprise);
+		v1.setAgentAddress(new IpAddress("192.0.2.10"));
+		v1.setGenericTrap(PDUv1.LINKDOWN);
+		v1.setSpecificTrap(0);
+		v1.setTimestamp(123456);
+		SnmpGatewayBenchmark.addInterfaceVarbinds(v1);
+		this.v1Trap = SnmpGatewayBenchmark.encode(v1);
+
+		PDU v2c = SnmpGatewayBenchmark.createNotification(PDU.TRAP, SnmpGatewayBenchmark.linkDown);
+		this.v2cTrap = SnmpGatewayBenchmark.encode(v2c);
+		this.inform = SnmpGatewayBenchmark.encode(SnmpGatewayBenchmark.createNotification(PDU.INFORM,
+																						SnmpGatewayBenchmark.linkDown));
+		this.v2cEvent = new SnmpGatewayEvent(this.createEvent(v2c, MessageProcessingModel.MPv2c));
+		this.enterpriseEvent = new SnmpGatewayEvent(this.createEvent(
+			SnmpGatewayBenchmark.createNotification(PDU.TRAP, new OID(SnmpGatewayBenchmark.enterprise + ".0.7")),
+			MessageProcessingModel.MPv2c));
+
+		File config = File.createTempFile("sgw", ".cfg");
+		config.deleteOnExit();
+		FileWriter w = new FileWriter(config);
+		w.write("event_function=onEvent\n");
+		w.close();
+		this.gateway = new SnmpGateway("benchmark", config.getPath(), true);
+		this.gateway.setCFCListeners(new String[] { "SnmpGatewayBenchmark.cfc" });
+
+		PDU r = new PDU();
+		r.setType(PDU.RESPONSE);
+		Vector<String> vbs = new Vector<String>();
+		for (int i = 1; i <= 20; i++) {
+			OID o = new OID("1.3.6.1.2.1.2.2.1.10." + i);
+			r.add(new VariableBinding(o, new Counter32(1000L * i)));
+			vbs.add(o.toString());
+		}
+		this.response = new SnmpGatewayResponse("GET", System.currentTimeMillis(), 1, "192.0.2.10/161", vbs, r);
+	}
+
+	/**
+	 * decode a v1 trap and read its event type and varbinds
+	 */
+	@Benchmark
+	public void decodeV1Trap(Blackhole bh) throws IOException {
+		PDUv1 pdu = new PDUv1();
+		pdu.decodeBER(new BERInputStream(ByteBuffer.wrap(this.v1Trap)));
+		this.consume(new SnmpGatewayEvent(this.createEvent(pdu, MessageProcessingModel.MPv1)), bh);
+	}
+
+	/**
+	 * decode a v2c trap and read its event type and varbinds
+	 */
+	@Benchmark
+	public void decodeV2cTrap(Blackhole bh) throws IOException {
+		PDU pdu = new PDU();
+		pdu.decodeBER(new BERInputStream(ByteBuffer.wrap(this.v2cTrap)));
+		this.consume(new SnmpGatewayEvent(this.createEvent(pdu, MessageProcessingModel.MPv2c)), bh);
+	}
+
+	/**
+	 * decode an INFORM and read its event type and varbinds
+	 */
+	@Benchmark
+	public void decodeInform(Blackhole bh) throws IOException {
+		PDU pdu = new PDU();
+		pdu.decodeBER(new BERInputStream(ByteBuffer.wrap(this.inform)));
+		this.consume(new SnmpGatewayEvent(this.createEvent(pdu, MessageProcessingModel.MPv2c)), bh);
+	}
+
+	/**
+	 * build the event data of a freshly received v2c trap and dispatch it to
+	 * the CFC listener
+	 */
+	@Benchmark
+	public void inboundMessage() throws IOException {
+		PDU pdu = new PDU();
+		pdu.decodeBER(new BERInputStream(ByteBuffer.wrap(this.v2cTrap)));
+		this.gateway.inboundMessage(new SnmpGatewayEvent(this.createEvent(pdu, MessageProcessingModel.MPv2c)));
+	}
+
+	/**
+	 * classify a generic (linkDown) notification
+	 */
+	@Benchmark
+	public String notificationTypeGeneric() {
+		return this.v2cEvent.getNotificationType();
+	}
+
+	/**
+	 * classify an enterprise specific notification
+	 */
+	@Benchmark
+	public String notificationTypeEnterprise() {
+		return this.enterpriseEvent.getNotificationType();
+	}
+
+	/**
+	 * build the varbind map of a 20 varbind response
+	 */
+	@Benchmark
+	public Object responseVarbinds() {
+		return this.response.getResponseVarbinds();
+	}
+
+	private void consume(SnmpGatewayEvent e, Blackhole bh) {
+		bh.consume(e.getEventType());
+		bh.consume(e.getEventVarbinds());
+	}
+
+	private CommandResponderEvent createEvent(PDU pdu, int mpModel) {
+		int secModel = (mpModel == MessageProcessingModel.MPv1) ? SecurityModel.SECURITY_MODEL_SNMPv1
+																 : SecurityModel.SECURITY_MODEL_SNMPv2c;
+		return new CommandResponderEvent(this.dispatcher, null, this.peer, mpModel, secModel,
+										 this.community, SecurityLevel.NOAUTH_NOPRIV,
+										 new PduHandle(pdu.getRequestID().getValue()), pdu, 65535, null);
+	}
+
+	private static PDU createNotification(int type, OID trapOID) {
+		PDU pdu = new PDU();
+		pdu.setType(type);
+		pdu.setRequestID(new Integer32(4242));
+		pdu.add(new VariableBinding(SnmpGatewayEvent.sysUpTime, new TimeTicks(123456)));
+		pdu.add(new VariableBinding(SnmpGatewayEvent.snmpTrapOID, trapOID));
+		SnmpGatewayBenchmark.addInterfaceVarbinds(pdu);
+		return pdu;
+	}
+
+	private static void addInterfaceVarbinds(PDU pdu) {
+		pdu.add(new VariableBinding(SnmpGatewayBenchmark.ifIndex, new Integer32(3)));
+		pdu.add(new VariableBinding(SnmpGatewayBenchmark.ifAdminStatus, new Integer32(1)));
+		pdu.add(new VariableBinding(SnmpGatewayBenchmark.ifOperStatus, new Integer32(2)));
+		pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.31.1.1.1.1.3"), new OctetString("GigabitEthernet0/3")));
+	}
+
+	private static byte[] encode(PDU pdu) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		pdu.encodeBER(out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * run every benchmark with the GC profiler
+	 *
+	 * @param args the file to which the JSON results are written, by
+	 *        default snmpgateway-benchmark.json
+	 */
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+			.include(SnmpGatewayBenchmark.class.getSimpleName())
+			.addProfiler(GCProfiler.class)
+			.resultFormat(ResultFormatType.JSON)
+			.result((args.length > 0) ? args[0] : "snmpgateway-benchmark.json")
+			.build();
+		new Runner(opt).run();
+	}
+}
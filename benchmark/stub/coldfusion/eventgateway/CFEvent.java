@@ -0,0 +1,65 @@
+package coldfusion.eventgateway;
+
+import java.util.Map;
+
+/**
+ * benchmark stub of the ColdFusion event gateway CFEvent, holding the
+ * fields the SNMP Gateway sets
+ */
+public class CFEvent {
+
+	private final String gatewayID;
+	private String cfcMethod;
+	private String cfcPath;
+	private Map data;
+	private String gatewayType;
+	private String originatorID;
+
+	public CFEvent(String gatewayID) {
+		this.gatewayID = gatewayID;
+	}
+
+	public String getGatewayID() {
+		return this.gatewayID;
+	}
+
+	public void setCfcMethod(String cfcMethod) {
+		this.cfcMethod = cfcMethod;
+	}
+
+	public String getCfcMethod() {
+		return this.cfcMethod;
+	}
+
+	public void setCfcPath(String cfcPath) {
+		this.cfcPath = cfcPath;
+	}
+
+	public String getCfcPath() {
+		return this.cfcPath;
+	}
+
+	public void setData(Map data) {
+		this.data = data;
+	}
+
+	public Map getData() {
+		return this.data;
+	}
+
+	public void setGatewayType(String gatewayType) {
+		this.gatewayType = gatewayType;
+	}
+
+	public String getGatewayType() {
+		return this.gatewayType;
+	}
+
+	public void setOriginatorID(String originatorID) {
+		this.originatorID = originatorID;
+	}
+
+	public String getOriginatorID() {
+		return this.originatorID;
+	}
+}
@@ -0,0 +1,31 @@
+package coldfusion.eventgateway;
+
+/**
+ * benchmark stub of the ColdFusion event gateway interface
+ */
+public interface Gateway {
+
+	public final static int STARTING = 1;
+	public final static int RUNNING  = 2;
+	public final static int STOPPING = 3;
+	public final static int STOPPED  = 4;
+	public final static int FAILED   = 5;
+
+	public void setGatewayID(String id);
+
+	public void setCFCListeners(String[] listeners);
+
+	public GatewayHelper getHelper();
+
+	public String getGatewayID();
+
+	public void start();
+
+	public void stop();
+
+	public void restart();
+
+	public int getStatus();
+
+	public String outgoingMessage(CFEvent cfmsg);
+}
@@ -0,0 +1,7 @@
+package coldfusion.eventgateway;
+
+/**
+ * benchmark stub of the ColdFusion event gateway helper marker interface
+ */
+public interface GatewayHelper {
+}
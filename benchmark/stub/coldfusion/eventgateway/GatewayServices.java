@@ -0,0 +1,41 @@
+package coldfusion.eventgateway;
+
+/**
+ * benchmark stub of the ColdFusion event gateway services.  The CF event
+ * service is never full: every event is accepted, and discarded.
+ */
+public class GatewayServices {
+
+	private final static GatewayServices services = new GatewayServices();
+	private final static Logger logger = new Logger();
+
+	public static GatewayServices getGatewayServices() {
+		return GatewayServices.services;
+	}
+
+	public Logger getLogger() {
+		return GatewayServices.logger;
+	}
+
+	public Logger getLogger(String logfile) {
+		return GatewayServices.logger;
+	}
+
+	/**
+	 * accept an event
+	 *
+	 * @param msg the event
+	 * @return true
+	 */
+	public boolean addEvent(CFEvent msg) {
+		return true;
+	}
+
+	public int getQueueSize() {
+		return 0;
+	}
+
+	public int getMaxQueueSize() {
+		return Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,33 @@
+package coldfusion.eventgateway;
+
+/**
+ * benchmark stub of the ColdFusion event gateway logger; warnings and errors
+ * go to standard error, everything else is discarded
+ */
+public class Logger {
+
+	public void debug(String msg) {
+	}
+
+	public void info(String msg) {
+	}
+
+	public void info(String msg, Throwable t) {
+	}
+
+	public void warn(String msg) {
+		System.err.println("WARN " + msg);
+	}
+
+	public void warn(String msg, Throwable t) {
+		System.err.println("WARN " + msg + ": " + t);
+	}
+
+	public void error(String msg) {
+		System.err.println("ERROR " + msg);
+	}
+
+	public void error(String msg, Throwable t) {
+		System.err.println("ERROR " + msg + ": " + t);
+	}
+}
@@ -0,0 +1,17 @@
+package coldfusion.server;
+
+/**
+ * benchmark stub of the ColdFusion service runtime exception
+ */
+public class ServiceRuntimeException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ServiceRuntimeException(String msg) {
+		super(msg);
+	}
+
+	public ServiceRuntimeException(String msg, Throwable cause) {
+		super(msg, cause);
+	}
+}
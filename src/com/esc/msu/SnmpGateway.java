@@ -7,13 +7,34 @@ import coldfusion.eventgateway.GatewayServices;
 import coldfusion.eventgateway.Logger;
 import coldfusion.server.ServiceRuntimeException;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.Properties;
+import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.security.Priv3DES;
+import org.snmp4j.security.SecurityModels;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
 
 
 /**
@@ -72,14 +93,248 @@ public class SnmpGateway implements Gateway {
      */
     private String eventListenerPort;
     /**
-     * the SNMP Gateway event listener class instance.
+     * the comma separated address/port pairs upon which SNMP Gateway event
+     * listeners listen; when empty a single event listener listens upon
+     * eventListenerAddress and eventListenerPort.
+     */
+    private String eventListenerAddresses = "";
+    /**
+     * true to receive SNMP event notifications over UDP into a reused direct
+     * buffer; false to use the SNMP4J default UDP transport.
+     */
+    private boolean listenerDirectTransport = false;
+    /**
+     * the requested socket receive buffer size (SO_RCVBUF) in bytes of the
+     * SNMP Gateway event listeners, or 0 for the system default.
+     */
+    private int listenerReceiveBuffer = 0;
+    /**
+     * the SNMP Gateway event listener class instances, one per listening socket.
      */
-    private SnmpGatewayEventListener eventListener;
+    private Vector<SnmpGatewayEventListener> eventListeners;
     /**
-     * the Executor instance within which the SNMP Gateway event listener
-     * runs.
+     * the Executor instance within which the SNMP Gateway event listeners
+     * run, one thread per listener.
      */
     private ExecutorService eventExec;
+    /**
+     * the maximum number of SNMP event notifications queued between the
+     * SNMP Gateway event listener and the CF event service.
+     */
+    private int ingressQueueCapacity = 10000;
+    /**
+     * the policy for shedding SNMP event notifications when the ingress
+     * queue is full.
+     */
+    private int ingressShedPolicy = SnmpGatewayEventQueue.DROP_OLDEST;
+    /**
+     * under the sample shedding policy, one in every ingressSampleRate
+     * notifications from each sender is admitted when the queue is full.
+     */
+    private int ingressSampleRate = 10;
+    /**
+     * the runtime counters of the gateway.
+     */
+    private final SnmpGatewayMetrics metrics = new SnmpGatewayMetrics();
+    /**
+     * CFC function to call with a batch of SNMP event notifications;
+     * when empty each notification is delivered on its own.
+     */
+    private String batchFunction = "";
+    /**
+     * the maximum number of SNMP event notifications in a batch.
+     */
+    private int batchMaxSize = 100;
+    /**
+     * the maximum time in milliseconds an SNMP event notification waits
+     * for its batch to be delivered.
+     */
+    private int batchMaxLinger = 250;
+    /**
+     * the batcher collecting SNMP event notifications into batches.
+     */
+    private SnmpGatewayEventBatcher eventBatcher;
+    /**
+     * the window in milliseconds within which repeats of an SNMP event
+     * notification are suppressed; 0 disables deduplication.
+     */
+    private int dedupWindow = 0;
+    /**
+     * the comma separated OID prefixes of the varbinds whose values are
+     * part of the deduplication key.
+     */
+    private String dedupVarbinds = "";
+    /**
+     * the maximum number of open deduplication windows.
+     */
+    private int dedupMaxKeys = 10000;
+    /**
+     * the deduplicator suppressing repeated SNMP event notifications.
+     */
+    private SnmpGatewayDeduplicator deduplicator;
+    /**
+     * the configuration holding the routing rules, compiled at start().
+     */
+    private Properties routeConfig = new Properties();
+    /**
+     * true to pass SNMP event notifications matching no routing rule to every
+     * CFC listener; false to drop them.
+     */
+    private boolean routeDefaultAll = true;
+    /**
+     * the router of SNMP event notifications to CFC listeners, or null if no
+     * routing rules are configured.
+     */
+    private SnmpGatewayRouter router;
+    /**
+     * the number of SNMP event notifications dropped for matching no routing rule.
+     */
+    private final AtomicLong eventsUnrouted = new AtomicLong(0);
+    /**
+     * the number of dispatcher threads (lanes) of each SNMP Gateway event listener.
+     */
+    private int dispatcherThreads = 2;
+    /**
+     * true to run dispatcher lanes, and the delivery of asynchronous helper
+     * responses, on virtual threads.
+     */
+    private boolean dispatcherVirtual = false;
+    /**
+     * the executor delivering asynchronous helper responses in the virtual
+     * thread mode, or null to deliver them on the request session's thread.
+     */
+    private ExecutorService responseExec;
+    /**
+     * the executor creating the SNMP4J targets of fan-out requests, since
+     * resolving an address or discovering an SNMPv3 engine may block.
+     */
+    private ExecutorService resolverExec;
+    /**
+     * the number of SNMP event notifications per second admitted from each
+     * sender; 0 disables rate limiting.
+     */
+    private int rateLimit = 0;
+    /**
+     * the number of SNMP event notifications admitted at once from a sender.
+     */
+    private int rateLimitBurst = 100;
+    /**
+     * the time in milliseconds after which an idle sender is forgotten by
+     * the rate limiter.
+     */
+    private int rateLimitIdle = 60000;
+    /**
+     * the maximum number of senders tracked by the rate limiter.
+     */
+    private int rateLimitMaxSenders = 10000;
+    /**
+     * the per-sender rate limiter, or null.
+     */
+    private SnmpGatewayRateLimiter rateLimiter;
+    /**
+     * the time in milliseconds a received INFORM is remembered, so that its
+     * retransmissions are not dispatched again; 0 disables.
+     */
+    private int informDedupWindow = 30000;
+    /**
+     * the maximum number of received INFORMs remembered.
+     */
+    private int informDedupMaxEntries = 10000;
+    /**
+     * the recently received INFORMs, or null.
+     */
+    private SnmpGatewayInformCache informCache;
+    /**
+     * the directory of the journal of received SNMP event notifications;
+     * empty disables journaling.
+     */
+    private String journalDir = "";
+    /**
+     * the size in bytes of each journal segment file.
+     */
+    private int journalSegmentSize = 16 * 1024 * 1024;
+    /**
+     * the maximum number of journal segment files kept.
+     */
+    private int journalMaxSegments = 16;
+    /**
+     * the journal of received SNMP event notifications, or null.
+     */
+    private SnmpGatewayJournal journal;
+    /**
+     * the thread replaying the journaled notifications not completed before
+     * the gateway last stopped, or null.
+     */
+    private Thread journalReplay;
+    /**
+     * the SNMP session shared by all SNMP Gateway helper requests.
+     */
+    private Snmp requestSession;
+    /**
+     * the transport underlying the shared SNMP request session.
+     */
+    private TransportMapping requestTransport;
+    /**
+     * the time in milliseconds to wait for a response to an SNMP Gateway
+     * helper request before retrying it.
+     */
+    private int requestTimeout = 1000;
+    /**
+     * the number of times an unanswered SNMP Gateway helper request is retried.
+     */
+    private int requestRetries = 1;
+    /**
+     * the maximum number of requests of a fan-out outstanding at any time.
+     */
+    private int fanOutWindow = 100;
+    /**
+     * the time in milliseconds a Get-Request is held for merging with other
+     * Get-Requests to the same SNMP Agent; 0 disables request coalescing.
+     */
+    private int coalesceWindow = 0;
+    /**
+     * the maximum size in bytes of a merged Get-Request and its response.
+     */
+    private int coalesceMaxMessageSize = 1472;
+    /**
+     * the coalescer merging Get-Requests sent on the shared SNMP request session.
+     */
+    private SnmpGatewayCoalescer coalescer;
+    /**
+     * the cache of varbinds returned by SNMP Gateway helper Get-Requests.
+     */
+    private SnmpGatewayCache responseCache;
+    /**
+     * the cache of SNMPv3 engine IDs and localized user keys for
+     * SNMP Gateway helper requests.
+     */
+    private SnmpGatewayEngineCache engineCache;
+    /**
+     * true if SNMP Gateway helper request timeouts are derived from the
+     * measured round-trip time to each SNMP Agent.
+     */
+    private boolean adaptiveTimeout = false;
+    /**
+     * the smallest adaptive request timeout in milliseconds.
+     */
+    private int adaptiveTimeoutMin = 100;
+    /**
+     * the largest adaptive request timeout in milliseconds.
+     */
+    private int adaptiveTimeoutMax = 5000;
+    /**
+     * the time in milliseconds after which an idle SNMP Agent's round-trip
+     * time estimate may be evicted.
+     */
+    private int adaptiveTimeoutIdle = 600000;
+    /**
+     * the maximum number of SNMP Agents whose round-trip times are estimated.
+     */
+    private int adaptiveTimeoutMaxTargets = 10000;
+    /**
+     * the round-trip time estimator for SNMP Gateway helper requests.
+     */
+    private SnmpGatewayRttEstimator rttEstimator;
 
     /**
      * Constructor for the SnmpGateway service
@@ -154,8 +409,134 @@ public class SnmpGateway implements Gateway {
         this.eventListenerAddress = properties.getProperty("listener_address", "0.0.0.0");
         // The SNMP Gateway Event Listener port number
     	this.eventListenerPort = properties.getProperty("listener_port", "162");
+        // Additional SNMP Gateway Event Listener sockets
+        this.eventListenerAddresses = properties.getProperty("listener_addresses", "").trim();
+        // SNMP Gateway Event Listener UDP transport
+        String transport = properties.getProperty("listener_transport", "default").trim();
+        if (transport.equalsIgnoreCase("default")) {
+        	this.listenerDirectTransport = false;
+        } else if (transport.equalsIgnoreCase("direct")) {
+        	this.listenerDirectTransport = true;
+        } else {
+            String error = SnmpGateway.gatewayType + " (" + this.gatewayID + ") Invalid value for " + 
+                           "listener_transport in configuration file: " + this.config;
+            throw new ServiceRuntimeException(error);
+        }
+        this.listenerReceiveBuffer = this.getIntProperty(properties, "listener_receive_buffer", 0);
         // Event functions
         this.eventFunction = properties.getProperty("event_function", "onEvent");
+        // Batched event delivery
+        this.batchFunction = properties.getProperty("batch_function", "").trim();
+        this.batchMaxSize = this.getIntProperty(properties, "batch_max_size", 100);
+        this.batchMaxLinger = this.getIntProperty(properties, "batch_max_linger", 250);
+        // Event notification deduplication
+        this.dedupWindow = this.getIntProperty(properties, "dedup_window", 0);
+        this.dedupVarbinds = properties.getProperty("dedup_varbinds", "").trim();
+        this.dedupMaxKeys = this.getIntProperty(properties, "dedup_max_keys", 10000);
+        // SNMP Gateway event listener dispatcher threads
+        this.dispatcherThreads = this.getIntProperty(properties, "dispatcher_threads", 2);
+        String mode = properties.getProperty("dispatcher_mode", "platform").trim();
+        if (mode.equalsIgnoreCase("platform")) {
+        	this.dispatcherVirtual = false;
+        } else if (mode.equalsIgnoreCase("virtual")) {
+        	this.dispatcherVirtual = SnmpGateway.getVirtualThreadExecutorFactory() != null;
+        	if (!this.dispatcherVirtual) {
+        		this.logWarn(SnmpGateway.gatewayType + " (" + this.gatewayID + 
+        					 ") Virtual threads are not available, using platform threads");
+        	}
+        } else {
+            String error = SnmpGateway.gatewayType + " (" + this.gatewayID + ") Invalid value for " + 
+                           "dispatcher_mode in configuration file: " + this.config;
+            throw new ServiceRuntimeException(error);
+        }
+        // Per-sender rate limiting
+        this.rateLimit = this.getIntProperty(properties, "rate_limit", 0);
+        this.rateLimitBurst = this.getIntProperty(properties, "rate_limit_burst", 100);
+        this.rateLimitIdle = this.getIntProperty(properties, "rate_limit_idle", 60000);
+        this.rateLimitMaxSenders = this.getIntProperty(properties, "rate_limit_max_senders", 10000);
+        // Per-target request latency
+        this.metrics.setMaxTargets(this.getIntProperty(properties, "latency_max_targets", 0));
+        // INFORM retransmission deduplication
+        this.informDedupWindow = this.getIntProperty(properties, "inform_dedup_window", 30000);
+        this.informDedupMaxEntries = this.getIntProperty(properties, "inform_dedup_max_entries", 10000);
+        // Event notification journal
+        this.journalDir = properties.getProperty("journal_dir", "").trim();
+        this.journalSegmentSize = this.getIntProperty(properties, "journal_segment_size", 16 * 1024 * 1024);
+        this.journalMaxSegments = this.getIntProperty(properties, "journal_max_segments", 16);
+        // Event notification routing rules
+        this.routeConfig = properties;
+        String routeDefault = properties.getProperty("route_default", "all").trim();
+        if (routeDefault.equalsIgnoreCase("all")) {
+        	this.routeDefaultAll = true;
+        } else if (routeDefault.equalsIgnoreCase("drop")) {
+        	this.routeDefaultAll = false;
+        } else {
+            String error = SnmpGateway.gatewayType + " (" + this.gatewayID + ") Invalid value for " + 
+                           "route_default in configuration file: " + this.config;
+            throw new ServiceRuntimeException(error);
+        }
+        // SNMP Gateway event listener ingress queue
+        this.ingressQueueCapacity = this.getIntProperty(properties, "ingress_queue_capacity", 10000);
+        this.ingressSampleRate = this.getIntProperty(properties, "ingress_sample_rate", 10);
+        try {
+        	this.ingressShedPolicy = SnmpGatewayEventQueue.parsePolicy(
+        								properties.getProperty("ingress_shed_policy", "drop-oldest"));
+        } catch (IllegalArgumentException e) {
+            String error = SnmpGateway.gatewayType + " (" + this.gatewayID + ") Invalid value for " + 
+                           "ingress_shed_policy in configuration file: " + this.config;
+            throw new ServiceRuntimeException(error, e);
+        }
+        // SNMP Gateway helper request timeout and retries
+        this.requestTimeout = this.getIntProperty(properties, "request_timeout", 1000);
+        this.requestRetries = this.getIntProperty(properties, "request_retries", 1);
+        // SNMP Gateway helper fan-out in-flight window
+        this.fanOutWindow = this.getIntProperty(properties, "fanout_window", 100);
+        // SNMP Gateway helper Get-Request coalescing
+        this.coalesceWindow = this.getIntProperty(properties, "coalesce_window", 0);
+        this.coalesceMaxMessageSize = this.getIntProperty(properties, "coalesce_max_message_size", 1472);
+        // SNMP Gateway helper adaptive request timeouts
+        this.adaptiveTimeout = Boolean.valueOf(properties.getProperty("adaptive_timeout", "false").trim()).booleanValue();
+        this.adaptiveTimeoutMin = this.getIntProperty(properties, "adaptive_timeout_min", 100);
+        this.adaptiveTimeoutMax = this.getIntProperty(properties, "adaptive_timeout_max", 5000);
+        this.adaptiveTimeoutIdle = this.getIntProperty(properties, "adaptive_timeout_idle", 600000);
+        this.adaptiveTimeoutMaxTargets = this.getIntProperty(properties, "adaptive_timeout_max_targets", 10000);
+        // SNMP Gateway helper Get-Request response cache
+        int cacheMaxEntries = this.getIntProperty(properties, "cache_max_entries", 0);
+        if (cacheMaxEntries > 0) {
+        	try {
+        		this.responseCache = new SnmpGatewayCache(this.getIntProperty(properties, "cache_default_ttl", 0),
+        												  properties.getProperty("cache_ttl"),
+        												  cacheMaxEntries);
+        	} catch (IllegalArgumentException e) {
+                String error = SnmpGateway.gatewayType + " (" + this.gatewayID + ") Invalid value for " + 
+                               "cache_ttl in configuration file: " + this.config;
+                throw new ServiceRuntimeException(error, e);
+        	}
+        } else {
+        	this.responseCache = null;
+        }
+    }
+
+    /**
+     * get an integer valued property from the configuration file
+     * 
+     * @param properties the loaded configuration file
+     * @param name the name of the property
+     * @param defaultValue the value to use when the property is not present
+     * @return the value of the property
+     */
+    private int getIntProperty(Properties properties, String name, int defaultValue) throws ServiceRuntimeException {
+    	String value = properties.getProperty(name);
+    	if (value == null || value.trim().length() == 0) {
+    		return defaultValue;
+    	}
+    	try {
+    		return Integer.parseInt(value.trim());
+    	} catch (NumberFormatException e) {
+            String error = SnmpGateway.gatewayType + " (" + this.gatewayID + ") Invalid value for " + 
+                           name + " in configuration file: " + this.config;
+            throw new ServiceRuntimeException(error, e);
+    	}
     }
 
 	/**
@@ -195,6 +576,445 @@ public class SnmpGateway implements Gateway {
     	this.eventListenerPort = p;
     }
     
+	/**
+	 *  get the address/port pairs upon which the SNMP Gateway event listeners
+	 *  listen, one listening socket (and reader thread) per pair
+	 *  
+	 * @return the address/port pairs of the SNMP Gateway event listeners
+	 */
+    public Vector<String> getEventListenerAddresses() {
+    	Vector<String> v = new Vector<String>();
+    	
+    	StringTokenizer st = new StringTokenizer(this.eventListenerAddresses, ", \t");
+    	while (st.hasMoreTokens()) {
+    		v.add(st.nextToken());
+    	}
+    	if (v.isEmpty()) {
+    		v.add(this.getEventListenerAddress() + "/" + this.getEventListenerPort());
+    	}
+    	return v;
+    }
+    
+	/**
+	 *  set the address/port pairs upon which the SNMP Gateway event listeners
+	 *  listen; takes effect when the gateway is next started
+	 *  
+	 * @param a the comma separated address/port pairs, or an empty string
+	 *        to listen upon the event listener address and port only
+	 */
+    public void setEventListenerAddresses(String a) {
+    	this.eventListenerAddresses = (a != null) ? a.trim() : "";
+    }
+    
+    /**
+     * get the number of dispatcher threads (lanes) of each SNMP Gateway event listener
+     * 
+     * @return the number of dispatcher threads
+     */
+    public int getDispatcherThreads() {
+    	return Math.max(1, this.dispatcherThreads);
+    }
+    
+    /**
+     * check whether dispatcher work runs on virtual threads; resolved when the
+     * configuration is loaded, so false on a JVM without virtual threads
+     * 
+     * @return true in the virtual thread mode
+     */
+    boolean isDispatcherVirtual() {
+    	return this.dispatcherVirtual;
+    }
+    
+    /**
+     * find Executors.newVirtualThreadPerTaskExecutor(), which needs Java 21
+     * 
+     * @return the factory method, or null if virtual threads are not available
+     */
+    private static Method getVirtualThreadExecutorFactory() {
+    	try {
+    		return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    	} catch (NoSuchMethodException e) {
+    		return null;
+    	}
+    }
+    
+    /**
+     * create an executor for dispatcher work- a fixed pool of platform
+     * threads, or in the virtual thread mode a virtual thread per task
+     * 
+     * @param threads the size of the fixed pool
+     * @return the executor
+     */
+    ExecutorService newDispatcherExecutor(int threads) {
+    	if (this.dispatcherVirtual) {
+    		try {
+    			return (ExecutorService )SnmpGateway.getVirtualThreadExecutorFactory().invoke(null);
+    		} catch (Exception e) {
+    			// isDispatcherVirtual() found the method, so this is not expected
+    			throw new IllegalStateException("Unable to create a virtual thread executor", e);
+    		}
+    	}
+    	return Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+    
+    /**
+     * get the executor delivering asynchronous helper responses to CFCs
+     * 
+     * @return the executor, or null to deliver responses on the request
+     *         session's own thread
+     */
+    ExecutorService getResponseExecutor() {
+    	return this.responseExec;
+    }
+    
+    /**
+     * get the executor creating the SNMP4J targets of fan-out requests
+     * 
+     * @return the executor
+     */
+    ExecutorService getResolverExecutor() {
+    	return this.resolverExec;
+    }
+    
+    /**
+     * determine whether the SNMP Gateway event listeners receive UDP into a
+     * reused direct buffer
+     * 
+     * @return true for the direct-buffer transport, false for the SNMP4J default
+     */
+    public boolean isListenerDirectTransport() {
+    	return this.listenerDirectTransport;
+    }
+    
+    /**
+     * get the requested socket receive buffer size of the SNMP Gateway event listeners
+     * 
+     * @return the receive buffer size in bytes, or 0 for the system default
+     */
+    public int getListenerReceiveBuffer() {
+    	return this.listenerReceiveBuffer;
+    }
+    
+    /**
+     * get the kernel's UDP receive counters for the SNMP Gateway event
+     * listener ports as a HashMap<String, Long>, read from /proc on Linux-
+     * RxQueue (bytes waiting) and Drops (datagrams dropped for want of
+     * receive buffer) summed over the listening sockets, and the system wide
+     * InErrors and RcvbufErrors.  Entries that cannot be read are left out.
+     * 
+     * @return the UDP receive counters
+     */
+    public HashMap<String, Long> getReceiveDropStatistics() {
+    	Vector<Integer> ports = new Vector<Integer>();
+    	
+    	for (String a : this.getEventListenerAddresses()) {
+    		try {
+    			ports.add(Integer.valueOf(a.substring(a.lastIndexOf('/') + 1).trim()));
+    		} catch (NumberFormatException e) {
+    			// not an address/port pair
+    		}
+    	}
+    	return SnmpGatewayUdpStatistics.read(ports);
+    }
+    
+    /**
+     * get the maximum number of SNMP event notifications queued between the
+     * SNMP Gateway event listener and the CF event service
+     * 
+     * @return the ingress queue capacity
+     */
+    public int getIngressQueueCapacity() {
+    	return this.ingressQueueCapacity;
+    }
+    
+    /**
+     * get the policy for shedding SNMP event notifications when the ingress queue is full
+     * 
+     * @return SnmpGatewayEventQueue.DROP_NEWEST, DROP_OLDEST or SAMPLE
+     */
+    public int getIngressShedPolicy() {
+    	return this.ingressShedPolicy;
+    }
+    
+    /**
+     * get the per-sender sampling rate of the sample shedding policy
+     * 
+     * @return one in every this many notifications from a sender is admitted
+     */
+    public int getIngressSampleRate() {
+    	return this.ingressSampleRate;
+    }
+    
+    /**
+     * get the ingress counters of the SNMP Gateway event listener as a
+     * HashMap<String, Long> with the entries Queued, ShedNewest, ShedOldest,
+     * ShedSampled, Depth, Rejected (CFEvents rejected by the CF event service)
+     * Unrouted (notifications matching no routing rule, when route_default is
+     * drop), InformRetransmissions (retransmitted INFORMs answered but not
+     * dispatched), when rate limiting RateLimited and RateLimitSenders and,
+     * when deduplicating, Suppressed and DedupWindows
+     * 
+     * @return the ingress counters
+     */
+    public HashMap<String, Long> getIngressStatistics() {
+    	HashMap<String, Long> stats = new HashMap<String, Long>();
+    	
+    	Vector<SnmpGatewayEventListener> listeners = this.eventListeners;
+    	if (listeners != null) {
+    		for (SnmpGatewayEventListener l : listeners) {
+    			l.addIngressStatistics(stats);
+    		}
+    	}
+    	SnmpGatewayDeduplicator dedup = this.deduplicator;
+    	if (dedup != null) {
+    		dedup.addStatistics(stats);
+    	}
+    	stats.put("Rejected", Long.valueOf(this.metrics.eventsRejected.sum()));
+    	stats.put("Unrouted", Long.valueOf(this.eventsUnrouted.get()));
+    	SnmpGatewayRateLimiter limiter = this.rateLimiter;
+    	if (limiter != null) {
+    		stats.put("RateLimited", Long.valueOf(limiter.getRejected()));
+    		stats.put("RateLimitSenders", Long.valueOf(limiter.getSenderCount()));
+    	}
+    	SnmpGatewayInformCache informs = this.informCache;
+    	if (informs != null) {
+    		stats.put("InformRetransmissions", Long.valueOf(informs.getRetransmissions()));
+    	}
+    	return stats;
+    }
+    
+    /**
+     * get the runtime metrics of the gateway as a HashMap<String, Object>.
+     * The counters are TrapsReceived, ReceiveErrors (datagrams the direct
+     * listener transport failed to receive), TrapsDecoded, EventsDispatched and
+     * EventsRejected (CFEvents accepted and rejected by the CF event service),
+     * TrapsDropped (notifications shed by the ingress queue, unrouted or rate
+     * limited), InformsAnswered, CacheHits, RequestTimeouts, RequestErrors and
+     * Requests, a struct holding Sent, Timeouts and Errors for each helper
+     * request type.  The gauges are QueueDepth, QueueCapacity, CachedResponses
+     * and, when enabled, DedupWindows and RateLimitSenders.  RequestLatency
+     * holds the round-trip time of answered requests for each request type,
+     * and DispatchLatency the time from receiving a notification to the CF
+     * event service accepting it for each notification PDU type (TRAP, V1TRAP
+     * or INFORM), each as a struct of Count, Mean, P50, P99, P999 and Max in
+     * nanoseconds.
+     * 
+     * @return the runtime metrics
+     */
+    public HashMap<String, Object> getMetrics() {
+    	HashMap<String, Object> m = new HashMap<String, Object>();
+    	
+    	this.metrics.addCounters(m);
+    	this.metrics.addLatency(m);
+    	HashMap<String, Long> ingress = this.getIngressStatistics();
+    	m.put("TrapsDropped", Long.valueOf(SnmpGateway.sum(ingress, "ShedNewest", "ShedOldest", "ShedSampled",
+    																"Unrouted", "RateLimited")));
+    	m.put("QueueDepth",    Long.valueOf(SnmpGateway.sum(ingress, "Depth")));
+    	m.put("QueueCapacity", Long.valueOf(this.ingressQueueCapacity));
+    	SnmpGatewayCache cache = this.responseCache;
+    	m.put("CachedResponses", Long.valueOf((cache != null) ? cache.size() : 0));
+    	if (ingress.containsKey("DedupWindows")) {
+    		m.put("DedupWindows", ingress.get("DedupWindows"));
+    	}
+    	if (ingress.containsKey("RateLimitSenders")) {
+    		m.put("RateLimitSenders", ingress.get("RateLimitSenders"));
+    	}
+    	return m;
+    }
+    
+    private static long sum(HashMap<String, Long> stats, String... names) {
+    	long sum = 0;
+    	for (String n : names) {
+    		Long v = stats.get(n);
+    		if (v != null) {
+    			sum += v.longValue();
+    		}
+    	}
+    	return sum;
+    }
+    
+    /**
+     * get the SNMP session shared by all SNMP Gateway helper requests
+     * 
+     * @return the shared SNMP session, or null if the gateway is not started
+     */
+    public Snmp getRequestSession() {
+    	return this.requestSession;
+    }
+    
+    /**
+     * get the time to wait for a response to an SNMP Gateway helper request
+     * 
+     * @return the request timeout in milliseconds
+     */
+    public int getRequestTimeout() {
+    	return this.requestTimeout;
+    }
+    
+    /**
+     * get the number of times an unanswered SNMP Gateway helper request is retried
+     * 
+     * @return the number of request retries
+     */
+    public int getRequestRetries() {
+    	return this.requestRetries;
+    }
+    
+    /**
+     * get the maximum number of requests of a fan-out outstanding at any time
+     * 
+     * @return the fan-out in-flight window
+     */
+    public int getFanOutWindow() {
+    	return this.fanOutWindow;
+    }
+    
+    /**
+     * get the time a Get-Request is held for merging with other Get-Requests
+     * 
+     * @return the coalescing window in milliseconds
+     */
+    public int getCoalesceWindow() {
+    	return this.coalesceWindow;
+    }
+    
+    /**
+     * get the coalescer merging Get-Requests sent on the shared SNMP request session
+     * 
+     * @return the request coalescer, or null if request coalescing is disabled
+     */
+    public SnmpGatewayCoalescer getCoalescer() {
+    	return this.coalescer;
+    }
+    
+    /**
+     * get the cache of varbinds returned by SNMP Gateway helper Get-Requests
+     * 
+     * @return the response cache, or null if response caching is disabled
+     */
+    public SnmpGatewayCache getResponseCache() {
+    	return this.responseCache;
+    }
+    
+    /**
+     * get the cache of SNMPv3 engine IDs and localized user keys
+     * 
+     * @return the engine cache, or null if the gateway is not started
+     */
+    public SnmpGatewayEngineCache getEngineCache() {
+    	return this.engineCache;
+    }
+    
+    /**
+     * get the round-trip time estimator for SNMP Gateway helper requests
+     * 
+     * @return the round-trip time estimator, or null if adaptive timeouts are disabled
+     */
+    public SnmpGatewayRttEstimator getRttEstimator() {
+    	return this.rttEstimator;
+    }
+    
+    /**
+     * account for a completed request sent on the shared SNMP request session:
+     * sample its round-trip time and, when an SNMPv3 agent did not respond,
+     * forget its engine so that it is rediscovered by the next request
+     * 
+     * @param target the SNMP4J target to which the request was sent
+     * @param millis the time in milliseconds from sending the request to its
+     *        response (or timeout)
+     * @param response the response PDU, or null if no response was received
+     */
+    void requestCompleted(Target target, long millis, PDU response) {
+    	SnmpGatewayRttEstimator rtt = this.rttEstimator;
+    	if (rtt != null) {
+    		rtt.sample(target, millis, response != null);
+    	}
+    	SnmpGatewayEngineCache engines = this.engineCache;
+    	if ((response == null) && (engines != null) &&
+    		(target.getVersion() == SnmpConstants.version3)) {
+    		// the agent may have been replaced- rediscover its engine next time
+    		engines.forget(target.getAddress());
+    	}
+    }
+    
+    /**
+     * start the SNMP session shared by the SNMP Gateway helper requests
+     * 
+     * @return success - true
+     * <br>    failure - false
+     */
+    private boolean startRequestSession() {
+    	boolean rc = true;
+    	
+    	if (this.requestSession == null) {
+    		try {
+    			this.requestTransport = new DefaultUdpTransportMapping();
+    			this.requestSession = new Snmp(this.requestTransport);
+    			SecurityProtocols.getInstance().addPrivacyProtocol(new Priv3DES());
+    			if (this.requestSession.getUSM() == null) {
+    				SecurityModels.getInstance().addSecurityModel(
+    					new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0));
+    			}
+    			this.engineCache = new SnmpGatewayEngineCache(this.requestSession);
+    			if (this.adaptiveTimeout) {
+    				this.rttEstimator = new SnmpGatewayRttEstimator(this.requestTimeout,
+    																this.adaptiveTimeoutMin,
+    																this.adaptiveTimeoutMax,
+    																this.adaptiveTimeoutIdle,
+    																this.adaptiveTimeoutMaxTargets);
+    			}
+    			this.requestTransport.listen();
+    			this.resolverExec = Executors.newCachedThreadPool();
+    			if (this.dispatcherVirtual) {
+    				this.responseExec = this.newDispatcherExecutor(1);
+    			}
+    			if (this.coalesceWindow > 0) {
+    				this.coalescer = new SnmpGatewayCoalescer(this, this.requestSession, this.coalesceWindow,
+    														  this.coalesceMaxMessageSize);
+    			}
+    		} catch (IOException e) {
+    			this.logWarn(SnmpGateway.gatewayType + " (" + this.gatewayID + 
+    					     ") Unable to start SNMP request session: " + e.getMessage());
+    			this.requestSession = null;
+    			this.requestTransport = null;
+    			this.engineCache = null;
+    			rc = false;
+    		}
+    	}
+    	return rc;
+    }
+    
+    /**
+     * stop the SNMP session shared by the SNMP Gateway helper requests
+     * and relinquish its transport
+     */
+    private void stopRequestSession() {
+    	if (this.resolverExec != null) {
+    		this.resolverExec.shutdownNow();
+    		this.resolverExec = null;
+    	}
+    	if (this.responseExec != null) {
+    		this.responseExec.shutdown();
+    		this.responseExec = null;
+    	}
+    	if (this.coalescer != null) {
+    		this.coalescer.stop();
+    		this.coalescer = null;
+    	}
+    	if (this.requestSession != null) {
+    		try {
+    			this.requestSession.close();
+    		} catch (IOException e) {
+    			this.logWarn(SnmpGateway.gatewayType + " (" + this.gatewayID + 
+    					     ") Unable to close SNMP request session: " + e.getMessage());
+    		}
+    		this.requestSession = null;
+    		this.requestTransport = null;
+    		this.engineCache = null;
+    		this.rttEstimator = null;
+    	}
+    }
+    
     /**
      * start the SNMP Gateway Event Listener
      * 
@@ -204,29 +1024,119 @@ public class SnmpGateway implements Gateway {
     private boolean startEventListener() {
     	boolean rc = true;
     	
-    	if (this.eventListener == null) {
+    	if (this.eventListeners == null) {
+    		// release whatever an earlier failed start left behind
+    		this.stopEventListener();
     	
-    		Vector<String> args = new Vector<String>();
-		
-    		// turn off log4j output
-    		args.add("-d");		
-    		args.add("OFF");
-    		// identify this as a eventListener		
-    		args.add("-Ol");
-    		// identify the target SNMP Agent
-    		args.add(this.getEventListenerAddress() + "/" + this.getEventListenerPort());
-		
-    		this.eventListener = new SnmpGatewayEventListener(this, args.toArray(new String[args.size()]));
-    		if (this.eventListener == null) {
-    			rc = false;
-    		} else {
-    			this.eventExec = Executors.newSingleThreadExecutor();
-    			this.eventExec.execute(this.eventListener);
+    		try {
+    			this.router = SnmpGatewayRouter.compile(this.routeConfig);
+    		} catch (IllegalArgumentException e) {
+    			this.logWarn(SnmpGateway.gatewayType + " (" + this.gatewayID + 
+    						 ") Invalid routing rule: " + e.getMessage());
+    			return false;
+    		}
+    		if (this.batchFunction.length() > 0) {
+    			this.eventBatcher = new SnmpGatewayEventBatcher(this, this.batchMaxSize, this.batchMaxLinger);
+    		}
+    		if (this.dedupWindow > 0) {
+    			this.deduplicator = new SnmpGatewayDeduplicator(this, this.dedupWindow,
+    															this.dedupVarbinds, this.dedupMaxKeys);
+    		}
+    		if (this.rateLimit > 0) {
+    			this.rateLimiter = new SnmpGatewayRateLimiter(this, this.rateLimit, this.rateLimitBurst,
+    														  this.rateLimitIdle, this.rateLimitMaxSenders);
+    		}
+    		if (this.informDedupWindow > 0) {
+    			this.informCache = new SnmpGatewayInformCache(this.informDedupWindow, this.informDedupMaxEntries);
+    		}
+    		if (this.journalDir.length() > 0 && !this.startJournal()) {
+    			this.stopEventListener();
+    			return false;
+    		}
+    		// one listener, each with its own socket, reader thread and lanes, per address;
+    		// the ingress queue capacity is shared out between them
+    		Vector<String> addresses = this.getEventListenerAddresses();
+    		Vector<SnmpGatewayEventListener> listeners = new Vector<SnmpGatewayEventListener>(addresses.size());
+    		for (String address : addresses) {
+    			Vector<String> args = new Vector<String>();
+    			
+    			// turn off log4j output
+    			args.add("-d");		
+    			args.add("OFF");
+    			// identify this as a eventListener		
+    			args.add("-Ol");
+    			// identify the target SNMP Agent
+    			args.add(address);
+    			
+    			listeners.add(new SnmpGatewayEventListener(this, args.toArray(new String[args.size()]),
+    													   Math.max(1, this.ingressQueueCapacity / addresses.size())));
+    		}
+    		this.eventListeners = listeners;
+    		for (SnmpGatewayEventListener l : listeners) {
+    			try {
+    				l.open();
+    			} catch (IOException e) {
+    				this.logWarn(SnmpGateway.gatewayType + " (" + this.gatewayID + 
+    							 ") Unable to listen on " + l.getAddress() + ": " + e.getMessage());
+    				this.stopEventListener();
+    				return false;
+    			}
+    		}
+    		this.eventExec = Executors.newFixedThreadPool(listeners.size());
+    		for (SnmpGatewayEventListener l : listeners) {
+    			this.eventExec.execute(l);
+    		}
+    		if (this.journal != null) {
+    			this.replayJournal();
     		}
     	}
 		return rc;
     }
     
+    /**
+     * stop the SNMP Gateway Event Listener and the components started with
+     * it- the batcher, deduplicator, rate limiter, INFORM cache and journal
+     */
+    private void stopEventListener() {
+		// stop replaying before the listeners replaying through are stopped
+		if (this.journalReplay != null) {
+			this.journalReplay.interrupt();
+			try {
+				this.journalReplay.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.journalReplay = null;
+		}
+		if (this.eventListeners != null) {
+			for (SnmpGatewayEventListener l : this.eventListeners) {
+				l.stop();
+			}
+			if (this.eventExec != null) {
+				this.eventExec.shutdownNow();
+				this.eventExec = null;
+			}
+			this.eventListeners = null;
+		}
+		if (this.deduplicator != null) {
+			this.deduplicator.stop();
+			this.deduplicator = null;
+		}
+		if (this.eventBatcher != null) {
+			this.eventBatcher.stop();
+			this.eventBatcher = null;
+		}
+		if (this.journal != null) {
+			this.journal.close();
+			this.journal = null;
+		}
+		this.informCache = null;
+		if (this.rateLimiter != null) {
+			this.rateLimiter.stop();
+			this.rateLimiter = null;
+		}
+    }
+    
 	/**
      * Return the id that uniquely defines the gateway
      *
@@ -306,13 +1216,190 @@ public class SnmpGateway implements Gateway {
 	}
 	
 	/**
-	 * package up and send along an SNMP event notification to CFC listeners
+	 * package up and send along an SNMP event notification to CFC listeners,
+	 * either on its own or as part of a batch.  When routing rules are
+	 * configured the notification is passed only to the CFC listeners of the
+	 * rules it matches.  When deduplication is enabled, repeats of a
+	 * notification within the deduplication window are held back and
+	 * summarized when the window closes.
 	 * 
 	 * @param e  the SNMP event notification 
 	 */
 	public void inboundMessage(SnmpGatewayEvent e) {
 		
-		if (this.eventFunction != null && this.eventFunction.trim().length() > 0) {
+		Vector<SnmpGatewayRouter.Rule> routes = this.route(e);
+		if (routes != null && routes.isEmpty()) {
+			this.completeEvent(e);
+			return;
+		}
+		SnmpGatewayDeduplicator dedup = this.deduplicator;
+		if (dedup == null) {
+			this.deliverEventData(this.createEventData(e), routes, e);
+		} else if (dedup.admit(e)) {
+			Hashtable<String, Object> eventData = this.createEventData(e);
+			eventData.put("RepeatCount", Integer.valueOf(1));
+			eventData.put("FirstSeen",   e.getTimeReceived());
+			eventData.put("LastSeen",    e.getTimeReceived());
+			this.deliverEventData(eventData, routes, e);
+		} else {
+			this.completeEvent(e);
+		}
+	}
+	
+	/**
+	 * mark an SNMP event notification complete- accepted by the CF event
+	 * service or deliberately dropped- so that it is not replayed from the journal
+	 * 
+	 * @param e the SNMP event notification
+	 */
+	void completeEvent(SnmpGatewayEvent e) {
+		
+		SnmpGatewayJournal.Record r = e.getJournalRecord();
+		SnmpGatewayJournal j = this.journal;
+		if (r != null && j != null) {
+			j.commit(r);
+		}
+	}
+	
+	/**
+	 * complete an SNMP event notification whose event data the CF event
+	 * service has accepted, recording the time taken from its receipt
+	 * 
+	 * @param e the SNMP event notification
+	 */
+	private void eventDispatched(SnmpGatewayEvent e) {
+		
+		long received = e.getNanosReceived();
+		PDU pdu = e.getPDU();
+		if (received != 0 && pdu != null) {
+			this.metrics.dispatched(PDU.getTypeString(pdu.getType()), System.nanoTime() - received);
+		}
+		this.completeEvent(e);
+	}
+	
+	/**
+	 * get the runtime counters of the gateway
+	 * 
+	 * @return the runtime counters
+	 */
+	SnmpGatewayMetrics getMetricsCounters() {
+		return this.metrics;
+	}
+	
+	/**
+	 * get the per-sender rate limiter
+	 * 
+	 * @return the rate limiter, or null if rate limiting is disabled
+	 */
+	SnmpGatewayRateLimiter getRateLimiter() {
+		return this.rateLimiter;
+	}
+	
+	/**
+	 * get the cache of recently received INFORMs
+	 * 
+	 * @return the INFORM cache, or null if INFORM retransmissions are not detected
+	 */
+	SnmpGatewayInformCache getInformCache() {
+		return this.informCache;
+	}
+	
+	/**
+	 * get the journal of received SNMP event notifications
+	 * 
+	 * @return the journal, or null if journaling is disabled
+	 */
+	SnmpGatewayJournal getJournal() {
+		return this.journal;
+	}
+	
+	/**
+	 * package up and send along the summary of an SNMP event notification
+	 * repeated within the deduplication window.  The event data is that of the
+	 * last repeat, with RepeatCount holding the number of notifications seen
+	 * in the window (including the one already delivered) and FirstSeen and
+	 * LastSeen the times the first and last of them were received.
+	 * 
+	 * @param e the last repeat of the SNMP event notification
+	 * @param count the number of notifications seen in the window
+	 * @param firstSeen the time the first notification was received
+	 * @param lastSeen the time the last notification was received
+	 */
+	void inboundRepeat(SnmpGatewayEvent e, int count, long firstSeen, long lastSeen) {
+		
+		Vector<SnmpGatewayRouter.Rule> routes = this.route(e);
+		if (routes != null && routes.isEmpty()) {
+			return;
+		}
+		Hashtable<String, Object> eventData = this.createEventData(e);
+		eventData.put("RepeatCount", Integer.valueOf(count));
+		eventData.put("FirstSeen",   new Date(firstSeen).toString());
+		eventData.put("LastSeen",    new Date(lastSeen).toString());
+		this.deliverEventData(eventData, routes, null);
+	}
+	
+	/**
+	 * find the routing rules matched by an SNMP event notification
+	 * 
+	 * @param e the SNMP event notification
+	 * @return the matched rules; null if the notification goes to every CFC
+	 *         listener, empty if it is dropped
+	 */
+	private Vector<SnmpGatewayRouter.Rule> route(SnmpGatewayEvent e) {
+		
+		SnmpGatewayRouter r = this.router;
+		if (r == null) {
+			return null;
+		}
+		Vector<SnmpGatewayRouter.Rule> routes = r.route(e);
+		if (routes.isEmpty()) {
+			if (this.routeDefaultAll) {
+				return null;
+			}
+			this.eventsUnrouted.incrementAndGet();
+		}
+		return routes;
+	}
+	
+	/**
+	 * send along the event data of an SNMP event notification to CFC listeners,
+	 * either on its own or as part of a batch.  Routed notifications are
+	 * always passed along on their own.
+	 * 
+	 * @param eventData the event data of the notification
+	 * @param routes the routing rules matched by the notification, or null
+	 *        to pass it to every CFC listener
+	 * @param source the notification, completed once the CF event service
+	 *        accepts its event data, or null
+	 */
+	private void deliverEventData(Hashtable<String, Object> data, Vector<SnmpGatewayRouter.Rule> routes,
+								  SnmpGatewayEvent source) {
+		
+		// built once and shared, read-only, by every CFEvent that carries it
+		Map<String, Object> eventData = Collections.unmodifiableMap(data);
+		
+		if (routes != null) {
+			boolean accepted = true;
+			for (SnmpGatewayRouter.Rule r : routes) {
+				String cfcMethod = (r.getCfcMethod() != null) ? r.getCfcMethod() : this.eventFunction;
+				accepted &= this.dispatchEvent(r.getCfcPath(), cfcMethod, eventData);
+			}
+			if (accepted && source != null) {
+				this.eventDispatched(source);
+			}
+			return;
+		}
+		
+		SnmpGatewayEventBatcher batcher = this.eventBatcher;
+		if (batcher != null) {
+			batcher.add(eventData, source);
+			
+		} else if (this.eventFunction == null || this.eventFunction.trim().length() == 0) {
+			if (source != null) {
+				this.completeEvent(source);
+			}
+			
+		} else {
 			
 			/*
 		    if (!this.isLogging) {
@@ -326,32 +1413,138 @@ public class SnmpGateway implements Gateway {
 		    }
 		    */
 
-		    // populate the CFEvent class
-		    CFEvent event = new CFEvent(this.gatewayID);  // use our gatewayID
-		    event.setCfcMethod(this.eventFunction);		  // set the function to call in the CFC
-
-		    Hashtable<String, Object> eventData = new Hashtable<String, Object>(); // create the data map
-		    eventData.put("CommunityString", e.getCommunityString());  	
-		    eventData.put("EventTimeStamp",  e.getEventTimeStamp());
-		    eventData.put("EventType",       e.getEventType()); 
-		    eventData.put("EventVarbinds",   e.getEventVarbinds()); 
-		    eventData.put("EventVersion",    e.getEventVersion());
-		    eventData.put("RequestId",       e.getRequestId());
-		    eventData.put("Sender",          e.getSender());
-		    eventData.put("TimeReceived",    e.getTimeReceived());
-		    
-		    event.setData(eventData);    								// place the data map into the CFEvent class
-		    event.setGatewayType(SnmpGateway.gatewayType);  			// set our gateway type
-		    event.setOriginatorID("");									// set the event originator
-
-		    for (String s: this.cfcListeners) {
-		    	//TODO: should the event class be cloned for each recipient?
-		    	event.setCfcPath(s);
-
-		    	this.gatewayServices.addEvent(event);
+		    if (this.dispatchEvent(this.eventFunction, eventData) && source != null) {
+		    	this.eventDispatched(source);
 		    }
 		}
+	}
+	
+	/**
+	 * package up and send along a batch of SNMP event notifications to CFC listeners
+	 * in a single CFEvent per listener.  The CFEvent data holds the array of
+	 * event data structs as Events and their number as EventCount.
+	 * 
+	 * @param events the event data of each SNMP event notification in the batch
+	 * @param sources the SNMP event notifications completed once the CF event
+	 *        service accepts the batch
+	 */
+	public void inboundBatch(Vector<Map<String, Object>> events, Vector<SnmpGatewayEvent> sources) {
+		
+	    Hashtable<String, Object> batchData = new Hashtable<String, Object>();
+	    batchData.put("Events",     Collections.unmodifiableList(events));
+	    batchData.put("EventCount", Integer.valueOf(events.size()));
+	    
+	    if (this.dispatchEvent(this.batchFunction, Collections.unmodifiableMap(batchData))) {
+	    	for (SnmpGatewayEvent e : sources) {
+	    		this.eventDispatched(e);
+	    	}
+	    }
+	}
+	
+	/**
+	 * create the event data map of an SNMP event notification
+	 * 
+	 * @param e  the SNMP event notification 
+	 * @return the event data map
+	 */
+	private Hashtable<String, Object> createEventData(SnmpGatewayEvent e) {
+		this.metrics.trapsDecoded.increment();
+	    Hashtable<String, Object> eventData = new Hashtable<String, Object>(); // create the data map
+	    eventData.put("CommunityString", e.getCommunityString());  	
+	    eventData.put("EventTimeStamp",  e.getEventTimeStamp());
+	    eventData.put("EventType",       e.getEventType()); 
+	    eventData.put("EventVarbinds",   Collections.unmodifiableMap(e.getEventVarbinds())); 
+	    eventData.put("EventVersion",    e.getEventVersion());
+	    eventData.put("RequestId",       e.getRequestId());
+	    eventData.put("Sender",          e.getSender());
+	    eventData.put("TimeReceived",    e.getTimeReceived());
+	    return eventData;
+	}
+	
+	/**
+	 * send a CFEvent carrying the supplied data to every CFC listener.  Each
+	 * listener gets its own CFEvent, all sharing the one (read-only) data map,
+	 * and is dispatched independently of the others.
+	 * 
+	 * @param cfcMethod the function to call in the CFC
+	 * @param data the data map of the CFEvent
+	 * @return true if every CFC listener's event was accepted by the CF event service
+	 */
+	private boolean dispatchEvent(String cfcMethod, Map<String, Object> data) {
+		boolean accepted = true;
+		
+	    for (String s: this.cfcListeners) {
+	    	accepted &= this.dispatchEvent(s, cfcMethod, data);
+	    }
+	    return accepted;
+	}
+	
+	/**
+	 * send a CFEvent carrying the supplied data to a single CFC
+	 * 
+	 * @param cfcPath the CFC to receive the event
+	 * @param cfcMethod the function to call in the CFC
+	 * @param data the data map of the CFEvent
+	 * @return true if the event was accepted by the CF event service
+	 */
+	private boolean dispatchEvent(String cfcPath, String cfcMethod, Map<String, Object> data) {
+		
+	    // populate the CFEvent class
+	    CFEvent event = new CFEvent(this.gatewayID);  // use our gatewayID
+	    event.setCfcMethod(cfcMethod);				  // set the function to call in the CFC
+	    event.setData(data);    					  // place the data map into the CFEvent class
+	    event.setGatewayType(SnmpGateway.gatewayType);// set our gateway type
+	    event.setOriginatorID("");					  // set the event originator
+	    event.setCfcPath(cfcPath);					  // set the CFC to receive the event
 
+	    if (!this.gatewayServices.addEvent(event)) {
+	    	this.metrics.eventsRejected.increment();
+	    	return false;
+	    }
+	    this.metrics.eventsDispatched.increment();
+	    return true;
+	}
+	
+	/**
+	 * package up and send along the response to an asynchronous SNMP Gateway
+	 * helper request to the requesting CFC
+	 * 
+	 * @param r the SNMP Response
+	 * @param cfcPath the CFC to receive the response
+	 * @param cfcMethod the CFC function to receive the response, or null for
+	 *        the default "onResponse"
+	 * @return true if the event was accepted by the CF event service
+	 */
+	public boolean inboundResponse(SnmpGatewayResponse r, String cfcPath, String cfcMethod) {
+		
+	    CFEvent event = new CFEvent(this.gatewayID);
+	    if (cfcMethod != null && cfcMethod.trim().length() > 0) {
+	    	event.setCfcMethod(cfcMethod);
+	    } else {
+	    	event.setCfcMethod("onResponse");
+	    }
+	    event.setCfcPath(cfcPath);
+
+	    Hashtable<String, Object> responseData = new Hashtable<String, Object>();
+	    responseData.put("RequestType",      r.getRequestType());
+	    responseData.put("Target",           r.getTarget());
+	    responseData.put("Start",            r.getStart());
+	    responseData.put("Duration",         r.getDuration());
+	    responseData.put("ErrorStatus",      Integer.valueOf(r.getErrorStatus()));
+	    responseData.put("ErrorStatusText",  r.getErrorStatusText());
+	    responseData.put("ErrorIndex",       Integer.valueOf(r.getErrorIndex()));
+	    responseData.put("ResponseVarbinds", r.getResponseVarbinds());
+	    
+	    event.setData(responseData);
+	    event.setGatewayType(SnmpGateway.gatewayType);
+	    event.setOriginatorID("");
+
+	    boolean accepted = this.gatewayServices.addEvent(event);
+	    if (!accepted) {
+	    	this.logWarn(SnmpGateway.gatewayType + " (" + this.gatewayID + 
+	    			     ") CF event queue rejected " + r.getRequestType() + " response from " + r.getTarget());
+	    }
+	    return accepted;
 	}
 	
     /**
@@ -392,34 +1585,116 @@ public class SnmpGateway implements Gateway {
 	}
 	
 	/**
-	 * start the SNMP Event Listener and transition
+	 * start the SNMP request session and the SNMP Event Listener and transition
 	 * the SNMP Gateway status to the RUNNING state
 	 */
 	public void start() {
         if (this.config != null) {
         	this.loadConfig();
         }
-	    if (this.startEventListener()) {
+	    if (this.startRequestSession() && this.startEventListener()) {
 	  		this.status = Gateway.RUNNING;
 	        if (isLogging) {
 	        	this.logger.info("SNMP event notification eventListener started on " +
-	        			  	this.getEventListenerAddress() + "/" + this.getEventListenerPort());
+	        			  	this.getEventListenerAddresses());
 	        }
 	    } else {
+	    	// release whatever was started before the failure
+	    	this.stopEventListener();
+	    	this.stopRequestSession();
+	    	this.status = Gateway.FAILED;
 	    	if (isLogging) {
 	    		this.logger.info("SNMP event notification eventListener FAILED to start on " +
-	        			  	this.getEventListenerAddress() + "/" + this.getEventListenerPort());
+	        			  	this.getEventListenerAddresses());
 	    	}
 	    }
 	}
 	
 	/**
-	 * stop the SNMP Event Listener and transition 
+	 * open the journal of received SNMP event notifications
+	 * 
+	 * @return success - true
+	 * <br>    failure - false
+	 */
+	private boolean startJournal() {
+		try {
+			this.journal = new SnmpGatewayJournal(this, new File(this.journalDir),
+												  this.journalSegmentSize, this.journalMaxSegments);
+		} catch (IOException e) {
+			this.logWarn(SnmpGateway.gatewayType + " (" + this.gatewayID + 
+						 ") Unable to open journal: " + e.getMessage());
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * replay the journaled notifications not completed before the gateway
+	 * last stopped on a thread of their own, once the listeners are up, so
+	 * that start() does not wait for them
+	 */
+	private void replayJournal() {
+		final SnmpGatewayJournal j = this.journal;
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				SnmpGateway.this.replayJournal(j);
+			}
+		}, "SnmpGatewayJournalReplay_" + this.gatewayID);
+		t.setDaemon(true);
+		this.journalReplay = t;
+		t.start();
+	}
+	
+	/**
+	 * pass the uncommitted notifications of a journal to the CFC listeners
+	 * until done or interrupted.  The messages still queued on a lane when
+	 * the gateway stopped are decoded again first, by the first listener.
+	 * 
+	 * @param j the journal
+	 */
+	private void replayJournal(SnmpGatewayJournal j) {
+		Vector<SnmpGatewayEvent> pending = j.recover();
+		Vector<SnmpGatewayJournal.Record> messages = j.recoverMessages();
+		if ((!pending.isEmpty() || !messages.isEmpty()) && isLogging) {
+			this.logger.info("Replaying " + pending.size() + " journaled SNMP event notifications and " +
+							 messages.size() + " journaled SNMP messages");
+		}
+		Vector<SnmpGatewayEventListener> listeners = this.eventListeners;
+		if (listeners != null && !listeners.isEmpty()) {
+			SnmpGatewayEventListener l = listeners.get(0);
+			for (SnmpGatewayJournal.Record r : messages) {
+				if (Thread.currentThread().isInterrupted()) {
+					// stopping- the rest are replayed on the next start
+					return;
+				}
+				try {
+					l.replay(j, r);
+				} catch (RuntimeException ex) {
+					this.logWarn("Failed to replay journaled SNMP message: " + ex.getMessage());
+				}
+			}
+		}
+		for (SnmpGatewayEvent e : pending) {
+			if (Thread.currentThread().isInterrupted()) {
+				// stopping- the rest are replayed on the next start
+				break;
+			}
+			try {
+				this.inboundMessage(e);
+			} catch (RuntimeException ex) {
+				this.logWarn("Failed to replay SNMP event notification from " +
+							 e.getSender() + ": " + ex.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * stop the SNMP Event Listener and the SNMP request session and transition 
 	 * the SNMP Gateway status to the STOPPED state
 	 */
 	public void stop() {
-		this.eventListener.stop();
-		this.eventExec.shutdownNow();
+		this.stopEventListener();
+		this.stopRequestSession();
 	
 		this.status = Gateway.STOPPED;
 		if (isLogging) {
@@ -0,0 +1,84 @@
+package com.esc.msu;
+
+import java.nio.ByteBuffer;
+
+/**
+ * a bounded pool of reused buffers, each holding one received message while
+ * it waits on a lane of the SNMP Gateway event listener to be decoded.
+ * <p>
+ * The receiving thread copies each message into a buffer taken from the pool
+ * of its sender's lane, and the lane returns the buffer once the message is
+ * decoded (or shed), so that no byte array is allocated per message once the
+ * pool holds as many buffers as the lane has messages queued.  A buffer is
+ * allocated when the pool is empty, and a buffer returned to a full pool is
+ * left to the garbage collector; a message larger than the buffer size is
+ * copied into a buffer of its own, which is not pooled.
+ */
+public class SnmpGatewayBufferPool {
+
+	/**
+	 * the size in bytes of each pooled buffer- a message of a single
+	 * Ethernet frame fits with plenty of room
+	 */
+	final static int BUFFER_SIZE = 4096;
+
+	private final ByteBuffer[] buffers;
+	private int count = 0;
+
+	/**
+	 * construct a buffer pool
+	 *
+	 * @param size the most buffers kept in the pool
+	 */
+	SnmpGatewayBufferPool(int size) {
+		this.buffers = new ByteBuffer[Math.max(1, size)];
+	}
+
+	/**
+	 * copy a message into a buffer from the pool
+	 *
+	 * @param message the message, from its position to its limit; its
+	 *        position is left unchanged
+	 * @return the buffer holding the message from its position to its limit
+	 */
+	ByteBuffer copy(ByteBuffer message) {
+		int length = message.remaining();
+		ByteBuffer b = null;
+
+		if (length <= SnmpGatewayBufferPool.BUFFER_SIZE) {
+			synchronized (this) {
+				if (this.count > 0) {
+					b = this.buffers[--this.count];
+					this.buffers[this.count] = null;
+				}
+			}
+			if (b == null) {
+				b = ByteBuffer.allocate(SnmpGatewayBufferPool.BUFFER_SIZE);
+			}
+		} else {
+			b = ByteBuffer.allocate(length);
+		}
+		int position = message.position();
+		b.clear();
+		b.put(message);
+		b.flip();
+		message.position(position);
+		return b;
+	}
+
+	/**
+	 * return a buffer to the pool once its message is decoded
+	 *
+	 * @param b the buffer, from copy()
+	 */
+	void release(ByteBuffer b) {
+		if (b.capacity() != SnmpGatewayBufferPool.BUFFER_SIZE) {
+			return;
+		}
+		synchronized (this) {
+			if (this.count < this.buffers.length) {
+				this.buffers[this.count++] = b;
+			}
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.esc.msu;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * caches the varbinds returned by SNMP Get-Requests per target SNMP Agent and OID.
+ * <p>
+ * Each OID is cached for the time-to-live of the longest configured OID prefix
+ * it falls under, or for the default time-to-live.  The cache holds at most
+ * maxEntries varbinds; when full the least recently used varbind is evicted.
+ */
+public class SnmpGatewayCache {
+
+	/**
+	 * a cached varbind and the time at which it expires
+	 */
+	private static class Entry {
+		final VariableBinding vb;
+		final long expires;
+
+		Entry(VariableBinding vb, long expires) {
+			this.vb = vb;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * the time-to-live for the OIDs under an OID prefix
+	 */
+	private static class Rule {
+		final OID prefix;
+		final long ttl;
+
+		Rule(OID prefix, long ttl) {
+			this.prefix = prefix;
+			this.ttl = ttl;
+		}
+	}
+
+	private final long defaultTtl;
+	private final Vector<Rule> rules = new Vector<Rule>();
+	private final LinkedHashMap<String, Entry> entries;
+
+	/**
+	 * construct a response cache
+	 *
+	 * @param defaultTtl the time-to-live in milliseconds for OIDs not under a
+	 *        configured prefix; 0 means such OIDs are not cached
+	 * @param ttls the comma separated list of prefix:ttl pairs, for example
+	 *        "1.3.6.1.2.1.1.5:60000,1.3.6.1.2.1.1.3:1000", or null
+	 * @param maxEntries the maximum number of cached varbinds
+	 */
+	SnmpGatewayCache(long defaultTtl, String ttls, final int maxEntries) {
+		this.defaultTtl = defaultTtl;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return this.size() > maxEntries;
+			}
+		};
+
+		if (ttls != null) {
+			StringTokenizer st = new StringTokenizer(ttls, ", \t");
+			while (st.hasMoreTokens()) {
+				String rule = st.nextToken();
+				int colon = rule.lastIndexOf(':');
+				if (colon <= 0) {
+					throw new IllegalArgumentException("Invalid cache_ttl rule: " + rule);
+				}
+				this.addRule(new Rule(new OID(rule.substring(0, colon)),
+									  Long.parseLong(rule.substring(colon + 1))));
+			}
+		}
+	}
+
+	/**
+	 * add a rule, keeping the rules ordered longest prefix first
+	 */
+	private void addRule(Rule r) {
+		int i = 0;
+		while ((i < this.rules.size()) && (this.rules.get(i).prefix.size() >= r.prefix.size())) {
+			i++;
+		}
+		this.rules.add(i, r);
+	}
+
+	/**
+	 * get the time-to-live for an OID
+	 */
+	private long getTtl(OID oid) {
+		for (Rule r : this.rules) {
+			if (oid.startsWith(r.prefix)) {
+				return r.ttl;
+			}
+		}
+		return this.defaultTtl;
+	}
+
+	/**
+	 * get a response PDU built from cached varbinds
+	 *
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param vbs the set of MIB variable bindings (varbinds) requested
+	 * @return the response PDU, or null unless every requested varbind is cached
+	 */
+	PDU get(SnmpGatewayCredentials cred, Vector<String> vbs) {
+		String key = cred.getSessionKey();
+		long now = System.currentTimeMillis();
+		PDU response = cred.createPDU(PDU.RESPONSE);
+
+		synchronized (this.entries) {
+			for (String vb : vbs) {
+				String k = key + "|" + vb;
+				Entry e = this.entries.get(k);
+				if (e == null) {
+					return null;
+				}
+				if (e.expires <= now) {
+					this.entries.remove(k);
+					return null;
+				}
+				response.add(e.vb);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * cache the varbinds of a successful response to a Get-Request
+	 *
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param vbs the set of MIB variable bindings (varbinds) requested
+	 * @param response the response PDU, or null if no response was received
+	 */
+	void put(SnmpGatewayCredentials cred, Vector<String> vbs, PDU response) {
+		if ((response == null) || (response.getErrorStatus() != PDU.noError) ||
+			(response.size() != vbs.size())) {
+			return;
+		}
+		String key = cred.getSessionKey();
+		long now = System.currentTimeMillis();
+
+		synchronized (this.entries) {
+			for (int i = 0; i < vbs.size(); i++) {
+				VariableBinding vb = response.get(i);
+				long ttl = this.getTtl(vb.getOid());
+				if ((ttl > 0) && !vb.isException()) {
+					this.entries.put(key + "|" + vbs.get(i), new Entry(vb, now + ttl));
+				}
+			}
+		}
+	}
+
+	/**
+	 * get the number of cached varbinds, including any that have expired
+	 * but not yet been evicted
+	 *
+	 * @return the number of cached varbinds
+	 */
+	public int size() {
+		synchronized (this.entries) {
+			return this.entries.size();
+		}
+	}
+
+	/**
+	 * discard every cached varbind
+	 */
+	public void clear() {
+		synchronized (this.entries) {
+			this.entries.clear();
+		}
+	}
+}
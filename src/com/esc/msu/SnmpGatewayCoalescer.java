@@ -0,0 +1,336 @@
+package com.esc.msu;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * merges concurrent SNMP Get-Requests to the same target SNMP Agent into a
+ * single request PDU.
+ * <p>
+ * A Get-Request is held for at most the coalescing window.  Requests for the
+ * same target and credentials arriving in that window are merged, up to the
+ * maximum message size, into one Get-Request PDU whose response is split back
+ * into a response PDU for each caller.  If the merged request fails with an
+ * error-status each caller's request is re-sent on its own, so one caller's
+ * bad OID never fails another caller's request.  A caller that cancels is
+ * withdrawn from its batch; the merged request is cancelled once every
+ * caller merged into it has withdrawn.
+ * <p>
+ * The round-trip time of each request actually sent, merged or on its own,
+ * is sampled and an SNMPv3 agent that does not respond has its engine
+ * forgotten, as for any other request on the shared SNMP request session;
+ * each caller's request is counted in the gateway's metrics when it completes,
+ * or as failed if it could not be sent.
+ */
+public class SnmpGatewayCoalescer {
+
+	/**
+	 * the number of bytes allowed for the message header of a merged request
+	 */
+	private final static int MESSAGE_HEADER_ALLOWANCE = 100;
+	/**
+	 * the number of bytes allowed for the value of each varbind in the response
+	 */
+	private final static int RESPONSE_VALUE_ALLOWANCE = 32;
+
+	/**
+	 * a caller's Get-Request waiting to be merged
+	 */
+	static class Caller {
+		final PDU request;
+		final SnmpGatewayFuture future;
+		Batch batch;
+
+		Caller(PDU request, SnmpGatewayFuture future) {
+			this.request = request;
+			this.future = future;
+		}
+	}
+
+	/**
+	 * the set of callers merged into one Get-Request PDU
+	 */
+	private class Batch implements ResponseListener, Runnable {
+		final String key;
+		final SnmpGatewayCredentials cred;
+		final Target target;
+		final Vector<Caller> callers = new Vector<Caller>();
+		final LinkedHashMap<OID, Integer> oids = new LinkedHashMap<OID, Integer>();
+		int length = SnmpGatewayCoalescer.MESSAGE_HEADER_ALLOWANCE;
+		/**
+		 * the number of callers that have not withdrawn
+		 */
+		int live = 0;
+		/**
+		 * the merged request once sent, or null
+		 */
+		PDU merged;
+		/**
+		 * the time in milliseconds the merged request was sent
+		 */
+		long sent;
+		/**
+		 * true once each caller's request has been sent on its own
+		 */
+		boolean each = false;
+
+		Batch(String key, SnmpGatewayCredentials cred, Target target) {
+			this.key = key;
+			this.cred = cred;
+			this.target = target;
+		}
+
+		/**
+		 * determine the encoded length of the batch with the request added
+		 */
+		@SuppressWarnings("unchecked")
+		int lengthWith(PDU request) {
+			int l = this.length;
+			for (VariableBinding vb : (Vector<VariableBinding> )request.getVariableBindings()) {
+				if (!this.oids.containsKey(vb.getOid())) {
+					l += vb.getBERLength() + SnmpGatewayCoalescer.RESPONSE_VALUE_ALLOWANCE;
+				}
+			}
+			return l;
+		}
+
+		@SuppressWarnings("unchecked")
+		void add(Caller c) {
+			this.length = this.lengthWith(c.request);
+			for (VariableBinding vb : (Vector<VariableBinding> )c.request.getVariableBindings()) {
+				if (!this.oids.containsKey(vb.getOid())) {
+					this.oids.put(vb.getOid(), Integer.valueOf(this.oids.size()));
+				}
+			}
+			this.callers.add(c);
+			c.batch = this;
+			this.live++;
+		}
+
+		/**
+		 * flush the batch when its coalescing window expires
+		 */
+		public void run() {
+			SnmpGatewayCoalescer.this.flush(this);
+		}
+
+		/**
+		 * split the response to the merged request among the callers
+		 */
+		@SuppressWarnings("unchecked")
+		public void onResponse(ResponseEvent e) {
+			// always cancel an asynchronous request once answered, otherwise it is retried
+			((Snmp )e.getSource()).cancel(e.getRequest(), this);
+
+			PDU response = e.getResponse();
+			SnmpGatewayCoalescer.this.gateway.requestCompleted(this.target,
+															   System.currentTimeMillis() - this.sent,
+															   response);
+			if (response == null) {
+				for (Caller c : this.callers) {
+					c.future.complete(null);
+				}
+			} else if ((response.getErrorStatus() != PDU.noError) ||
+					   (response.size() != this.oids.size())) {
+				SnmpGatewayCoalescer.this.sendEach(this);
+			} else {
+				Vector<VariableBinding> vbs = response.getVariableBindings();
+				for (Caller c : this.callers) {
+					PDU r = this.cred.createPDU(PDU.RESPONSE);
+					r.setRequestID(c.request.getRequestID());
+					for (VariableBinding vb : (Vector<VariableBinding> )c.request.getVariableBindings()) {
+						r.add(vbs.get(this.oids.get(vb.getOid()).intValue()));
+					}
+					c.future.complete(r);
+				}
+			}
+		}
+	}
+
+	private final SnmpGateway gateway;
+	private final Snmp session;
+	private final long window;
+	private final int maxMessageSize;
+	private final HashMap<String, Batch> batches = new HashMap<String, Batch>();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	/**
+	 * construct a coalescer for Get-Requests sent on the shared SNMP request session
+	 *
+	 * @param gateway the gateway sampling the round-trip time of each request sent
+	 * @param session the SNMP session on which merged requests are sent
+	 * @param window the time in milliseconds a request is held for merging
+	 * @param maxMessageSize the maximum size in bytes of a merged request and its response
+	 */
+	SnmpGatewayCoalescer(SnmpGateway gateway, Snmp session, long window, int maxMessageSize) {
+		this.gateway = gateway;
+		this.session = session;
+		this.window = window;
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	/**
+	 * submit a caller's Get-Request for merging
+	 *
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param target the SNMP4J target for the target SNMP Agent
+	 * @param request the caller's Get-Request PDU
+	 * @param future the handle through which the caller receives its response
+	 */
+	void submit(SnmpGatewayCredentials cred, Target target, PDU request, SnmpGatewayFuture future) {
+		String key = cred.getSessionKey();
+		Caller c = new Caller(request, future);
+		Batch full = null;
+
+		future.coalescing(this, c);
+		synchronized (this.batches) {
+			Batch b = this.batches.get(key);
+			if ((b != null) && (b.lengthWith(request) > this.maxMessageSize)) {
+				this.batches.remove(key);
+				full = b;
+				b = null;
+			}
+			if (b == null) {
+				b = new Batch(key, cred, target);
+				this.batches.put(key, b);
+				this.scheduler.schedule(b, this.window, TimeUnit.MILLISECONDS);
+			}
+			b.add(c);
+		}
+		if (full != null) {
+			this.send(full);
+		}
+	}
+
+	/**
+	 * flush a batch whose coalescing window has expired
+	 */
+	private void flush(Batch b) {
+		synchronized (this.batches) {
+			if (this.batches.get(b.key) != b) {
+				// already flushed because it was full
+				return;
+			}
+			this.batches.remove(b.key);
+		}
+		this.send(b);
+	}
+
+	/**
+	 * send the merged Get-Request PDU for a batch
+	 */
+	private void send(Batch b) {
+		if (b.callers.size() == 1) {
+			this.sendEach(b);
+			return;
+		}
+		PDU merged = b.cred.createPDU(PDU.GET);
+		for (OID o : b.oids.keySet()) {
+			merged.add(new VariableBinding(o));
+		}
+		synchronized (this.batches) {
+			if (b.live == 0) {
+				// every caller has withdrawn
+				return;
+			}
+			b.merged = merged;
+			b.sent = System.currentTimeMillis();
+		}
+		try {
+			this.session.send(merged, b.target, null, b);
+		} catch (IOException e) {
+			for (Caller c : b.callers) {
+				c.future.fail();
+			}
+		}
+	}
+
+	/**
+	 * send each caller's Get-Request of a batch on its own
+	 */
+	private void sendEach(Batch b) {
+		synchronized (this.batches) {
+			b.each = true;
+		}
+		for (Caller c : b.callers) {
+			if (c.future.isDone()) {
+				// cancelled
+				continue;
+			}
+			c.future.resending(b.target);
+			try {
+				this.session.send(c.request, b.target, null, c.future);
+			} catch (IOException e) {
+				c.future.fail();
+			}
+		}
+	}
+
+	/**
+	 * withdraw the Get-Request of a caller that has cancelled.  A request
+	 * still being held is removed from its batch, and a batch left with no
+	 * callers is not sent.  Once sent, a merged request is cancelled only when
+	 * every caller merged into it has withdrawn, since the others still wait
+	 * for its response; a request re-sent on its own is cancelled at once.
+	 *
+	 * @param c the caller that has cancelled
+	 */
+	void cancel(Caller c) {
+		Batch b;
+		PDU merged = null;
+		boolean each = false;
+
+		synchronized (this.batches) {
+			b = c.batch;
+			b.live--;
+			if (this.batches.get(b.key) == b) {
+				b.callers.remove(c);
+				if (b.callers.isEmpty()) {
+					this.batches.remove(b.key);
+				}
+				return;
+			}
+			if (b.each) {
+				each = true;
+			} else if (b.live == 0) {
+				merged = b.merged;
+			}
+		}
+		if (each) {
+			this.session.cancel(c.request, c.future);
+		} else if (merged != null) {
+			this.session.cancel(merged, b);
+		}
+	}
+
+	/**
+	 * stop merging requests; any that are being held complete without a
+	 * response and are counted as failed, since they were never sent
+	 */
+	void stop() {
+		Vector<Batch> held;
+		synchronized (this.batches) {
+			held = new Vector<Batch>(this.batches.values());
+			this.batches.clear();
+		}
+		this.scheduler.shutdownNow();
+		for (Batch b : held) {
+			for (Caller c : b.callers) {
+				c.future.fail();
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.esc.msu;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a counter that many threads can increment without contending on a single
+ * memory location.
+ * <p>
+ * The count is spread over a number of cells, one per cache line, and each
+ * thread adds to the cell selected by its thread ID; the value of the counter
+ * is the sum of the cells.  This is the technique of
+ * java.util.concurrent.atomic.LongAdder, which is not available before Java 8.
+ * An increment is a single atomic add with no retry; reading the value sums
+ * the cells and is not an atomic snapshot while threads are adding.
+ */
+public class SnmpGatewayCounter {
+
+	/**
+	 * the number of longs in a 64 byte cache line; only the first of each
+	 * line is used, so that no two cells share a line
+	 */
+	private final static int PAD = 8;
+	/**
+	 * the number of cells- a power of two no less than the number of processors
+	 */
+	private final static int CELLS;
+
+	static {
+		int n = 1;
+		int processors = Runtime.getRuntime().availableProcessors();
+		while ((n < processors) && (n < 64)) {
+			n <<= 1;
+		}
+		CELLS = n;
+	}
+
+	// one line of padding ahead of the first cell keeps it clear of the array header
+	private final AtomicLongArray cells = new AtomicLongArray((SnmpGatewayCounter.CELLS + 1) * SnmpGatewayCounter.PAD);
+
+	/**
+	 * add one to the counter
+	 */
+	void increment() {
+		this.cells.getAndIncrement(SnmpGatewayCounter.getCell());
+	}
+
+	/**
+	 * add to the counter
+	 *
+	 * @param x the amount to add
+	 */
+	void add(long x) {
+		this.cells.getAndAdd(SnmpGatewayCounter.getCell(), x);
+	}
+
+	/**
+	 * get the value of the counter
+	 *
+	 * @return the sum of the cells
+	 */
+	long sum() {
+		long sum = 0;
+		for (int i = SnmpGatewayCounter.PAD; i < this.cells.length(); i += SnmpGatewayCounter.PAD) {
+			sum += this.cells.get(i);
+		}
+		return sum;
+	}
+
+	/**
+	 * get the index of the calling thread's cell
+	 */
+	private static int getCell() {
+		long id = Thread.currentThread().getId();
+		// thread IDs are sequential; spread them over the cells
+		int h = (int )(id ^ (id >>> 32)) * 0x9e3779b9;
+		return ((h >>> 16) & (SnmpGatewayCounter.CELLS - 1)) * SnmpGatewayCounter.PAD + SnmpGatewayCounter.PAD;
+	}
+}
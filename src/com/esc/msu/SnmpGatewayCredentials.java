@@ -1,5 +1,31 @@
 package com.esc.msu;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.Target;
+import org.snmp4j.UserTarget;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.security.AuthMD5;
+import org.snmp4j.security.AuthSHA;
+import org.snmp4j.security.Priv3DES;
+import org.snmp4j.security.PrivAES128;
+import org.snmp4j.security.PrivAES192;
+import org.snmp4j.security.PrivAES256;
+import org.snmp4j.security.PrivDES;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.security.SecurityModel;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+
 /**
  * Provides the SNMP credentials for an SNMPGateway request.
  */
@@ -10,6 +36,9 @@ public class SnmpGatewayCredentials {
 	 */
 	public final static int SNMP_VERSION_1  = 0;
 	public final static int SNMP_VERSION_2c = 1;
+	public final static int SNMP_VERSION_3  = 3;
+	
+	private final static Charset UTF8 = Charset.forName("UTF-8");
 	
 	/**
 	 * The SNMP Version for the Gateway operation. 
@@ -33,6 +62,37 @@ public class SnmpGatewayCredentials {
 	 */
 	private String targetCommunity;
 	
+	/**
+	 * the SNMPv3 user (security name) to use with an SNMP Gateway request
+	 */
+	private String securityName;
+	
+	/**
+	 * the SNMPv3 authentication protocol- "MD5", "SHA" or null for none
+	 */
+	private String authProtocol;
+	
+	/**
+	 * the SNMPv3 authentication passphrase
+	 */
+	private String authPassphrase;
+	
+	/**
+	 * the SNMPv3 privacy protocol- "DES", "3DES", "AES128", "AES192",
+	 * "AES256" or null for none
+	 */
+	private String privProtocol;
+	
+	/**
+	 * the SNMPv3 privacy passphrase
+	 */
+	private String privPassphrase;
+	
+	/**
+	 * the SNMPv3 context name
+	 */
+	private String contextName = "";
+	
 	/**
 	 * Constructor for a set of v1/v2c SNMP Credentials
 	 * 
@@ -45,14 +105,40 @@ public class SnmpGatewayCredentials {
 		this.targetCommunity = new String(community);
 	}
 	
+	/**
+	 * Constructor for a set of v3 SNMP Credentials
+	 * 
+	 * @param target the IP Address of the target SNMP Agent
+	 * @param securityName the SNMPv3 user to use in requests made on the
+	 *        target SNMP Agent
+	 * @param authProtocol the authentication protocol- "MD5", "SHA" or null for none
+	 * @param authPassphrase the authentication passphrase
+	 * @param privProtocol the privacy protocol- "DES", "3DES", "AES128",
+	 *        "AES192", "AES256" or null for none
+	 * @param privPassphrase the privacy passphrase
+	 */
+	public SnmpGatewayCredentials(String target, String securityName,
+								  String authProtocol, String authPassphrase,
+								  String privProtocol, String privPassphrase) {
+		this.targetAddress = new String(target);
+		this.targetCommunity = "";
+		this.snmpVersion = SnmpGatewayCredentials.SNMP_VERSION_3;
+		this.securityName = new String(securityName);
+		this.setAuthProtocol(authProtocol);
+		this.authPassphrase = authPassphrase;
+		this.setPrivProtocol(privProtocol);
+		this.privPassphrase = privPassphrase;
+	}
+	
 	/**
 	 * Set the SNMP version
-	 * @param version the SNMP version to set- either SNMP_VERSION_1
-	 * or SNMP_VERSION_2c
+	 * @param version the SNMP version to set- either SNMP_VERSION_1,
+	 * SNMP_VERSION_2c or SNMP_VERSION_3
 	 */
 	public void setSnmpVersion(int version) {
 		if ((version == SnmpGatewayCredentials.SNMP_VERSION_1) ||
-			(version == SnmpGatewayCredentials.SNMP_VERSION_2c)) {
+			(version == SnmpGatewayCredentials.SNMP_VERSION_2c) ||
+			(version == SnmpGatewayCredentials.SNMP_VERSION_3)) {
 			this.snmpVersion = version;
 		}
 	}
@@ -79,6 +165,9 @@ public class SnmpGatewayCredentials {
 		case SnmpGatewayCredentials.SNMP_VERSION_2c:
 			s = new String("2c");
 			break;
+		case SnmpGatewayCredentials.SNMP_VERSION_3:
+			s = new String("3");
+			break;
 		default:
 			s = null;
 		}
@@ -140,4 +229,275 @@ public class SnmpGatewayCredentials {
 	public String getTargetCommunity() {
 		return(new String(this.targetCommunity));
 	}
+	
+	/**
+	 * Set the SNMPv3 user (security name).
+	 * @param securityName the SNMPv3 user
+	 */
+	public void setSecurityName(String securityName) {
+		this.securityName = new String(securityName);
+	}
+	
+	/**
+	 * Get the SNMPv3 user (security name).
+	 * @return the SNMPv3 user
+	 */
+	public String getSecurityName() {
+		return this.securityName;
+	}
+	
+	/**
+	 * Set the SNMPv3 authentication protocol.
+	 * @param protocol the authentication protocol- "MD5", "SHA" or null for none
+	 */
+	public void setAuthProtocol(String protocol) {
+		if ((protocol != null) && (protocol.trim().length() > 0)) {
+			this.authProtocol = protocol.trim().toUpperCase();
+			this.getAuthProtocolID();  // reject unknown protocols
+		} else {
+			this.authProtocol = null;
+		}
+	}
+	
+	/**
+	 * Get the SNMPv3 authentication protocol.
+	 * @return the authentication protocol, or null for none
+	 */
+	public String getAuthProtocol() {
+		return this.authProtocol;
+	}
+	
+	/**
+	 * Set the SNMPv3 authentication passphrase.
+	 * @param passphrase the authentication passphrase
+	 */
+	public void setAuthPassphrase(String passphrase) {
+		this.authPassphrase = passphrase;
+	}
+	
+	/**
+	 * Get the SNMPv3 authentication passphrase.
+	 * @return the authentication passphrase
+	 */
+	public String getAuthPassphrase() {
+		return this.authPassphrase;
+	}
+	
+	/**
+	 * Set the SNMPv3 privacy protocol.
+	 * @param protocol the privacy protocol- "DES", "3DES", "AES128", "AES192",
+	 *        "AES256" or null for none
+	 */
+	public void setPrivProtocol(String protocol) {
+		if ((protocol != null) && (protocol.trim().length() > 0)) {
+			this.privProtocol = protocol.trim().toUpperCase();
+			this.getPrivProtocolID();  // reject unknown protocols
+		} else {
+			this.privProtocol = null;
+		}
+	}
+	
+	/**
+	 * Get the SNMPv3 privacy protocol.
+	 * @return the privacy protocol, or null for none
+	 */
+	public String getPrivProtocol() {
+		return this.privProtocol;
+	}
+	
+	/**
+	 * Set the SNMPv3 privacy passphrase.
+	 * @param passphrase the privacy passphrase
+	 */
+	public void setPrivPassphrase(String passphrase) {
+		this.privPassphrase = passphrase;
+	}
+	
+	/**
+	 * Get the SNMPv3 privacy passphrase.
+	 * @return the privacy passphrase
+	 */
+	public String getPrivPassphrase() {
+		return this.privPassphrase;
+	}
+	
+	/**
+	 * Set the SNMPv3 context name.
+	 * @param contextName the context name
+	 */
+	public void setContextName(String contextName) {
+		this.contextName = (contextName != null) ? contextName : "";
+	}
+	
+	/**
+	 * Get the SNMPv3 context name.
+	 * @return the context name
+	 */
+	public String getContextName() {
+		return this.contextName;
+	}
+	
+	/**
+	 * Get the SNMP4J identifier of the SNMPv3 authentication protocol.
+	 * @return the authentication protocol OID, or null for none
+	 */
+	OID getAuthProtocolID() {
+		OID id;
+		
+		if (this.authProtocol == null) {
+			id = null;
+		} else if (this.authProtocol.equals("MD5")) {
+			id = AuthMD5.ID;
+		} else if (this.authProtocol.equals("SHA")) {
+			id = AuthSHA.ID;
+		} else {
+			throw new IllegalArgumentException("Unknown SNMPv3 authentication protocol: " + this.authProtocol);
+		}
+		return id;
+	}
+	
+	/**
+	 * Get the SNMP4J identifier of the SNMPv3 privacy protocol.
+	 * @return the privacy protocol OID, or null for none
+	 */
+	OID getPrivProtocolID() {
+		OID id;
+		
+		if (this.privProtocol == null) {
+			id = null;
+		} else if (this.privProtocol.equals("DES")) {
+			id = PrivDES.ID;
+		} else if (this.privProtocol.equals("3DES")) {
+			id = Priv3DES.ID;
+		} else if (this.privProtocol.equals("AES") || this.privProtocol.equals("AES128")) {
+			id = PrivAES128.ID;
+		} else if (this.privProtocol.equals("AES192")) {
+			id = PrivAES192.ID;
+		} else if (this.privProtocol.equals("AES256")) {
+			id = PrivAES256.ID;
+		} else {
+			throw new IllegalArgumentException("Unknown SNMPv3 privacy protocol: " + this.privProtocol);
+		}
+		return id;
+	}
+	
+	/**
+	 * Get the SNMPv3 security level implied by the authentication and
+	 * privacy protocols.
+	 * @return the SNMP4J security level
+	 */
+	int getSecurityLevel() {
+		int level;
+		
+		if (this.authProtocol == null) {
+			level = SecurityLevel.NOAUTH_NOPRIV;
+		} else if (this.privProtocol == null) {
+			level = SecurityLevel.AUTH_NOPRIV;
+		} else {
+			level = SecurityLevel.AUTH_PRIV;
+		}
+		return level;
+	}
+	
+	/**
+	 * Create the SNMP4J target describing the target SNMP Agent.
+	 * 
+	 * @param timeout the time in milliseconds to wait for a response
+	 * @param retries the number of times an unanswered request is retried
+	 * @return the SNMP4J target for requests made on the target SNMP Agent
+	 * 
+	 * @throws UnknownHostException if the target address cannot be resolved
+	 */
+	public Target createTarget(long timeout, int retries) throws UnknownHostException {
+		Target target;
+		
+		if (this.snmpVersion == SnmpGatewayCredentials.SNMP_VERSION_3) {
+			UserTarget ut = new UserTarget();
+			ut.setSecurityModel(SecurityModel.SECURITY_MODEL_USM);
+			ut.setSecurityName(new OctetString(this.securityName));
+			ut.setSecurityLevel(this.getSecurityLevel());
+			ut.setVersion(SnmpConstants.version3);
+			target = ut;
+		} else {
+			CommunityTarget ct = new CommunityTarget();
+			ct.setCommunity(new OctetString(this.targetCommunity));
+			if (this.snmpVersion == SnmpGatewayCredentials.SNMP_VERSION_1) {
+				ct.setVersion(SnmpConstants.version1);
+			} else {
+				ct.setVersion(SnmpConstants.version2c);
+			}
+			target = ct;
+		}
+		target.setAddress(new UdpAddress(InetAddress.getByName(this.targetAddress), this.targetPort));
+		target.setTimeout(timeout);
+		target.setRetries(retries);
+		return target;
+	}
+	
+	/**
+	 * Create an empty request PDU suitable for the SNMP version of these credentials.
+	 * 
+	 * @param type the PDU type (for example PDU.GET or PDU.GETNEXT)
+	 * @return an empty request PDU of the requested type
+	 */
+	public PDU createPDU(int type) {
+		PDU pdu;
+		
+		if (this.snmpVersion == SnmpGatewayCredentials.SNMP_VERSION_1) {
+			pdu = new PDUv1();
+		} else if (this.snmpVersion == SnmpGatewayCredentials.SNMP_VERSION_3) {
+			ScopedPDU scoped = new ScopedPDU();
+			scoped.setContextName(new OctetString(this.contextName));
+			pdu = scoped;
+		} else {
+			pdu = new PDU();
+		}
+		pdu.setType(type);
+		return pdu;
+	}
+	
+	/**
+	 * Get the key identifying the target SNMP Agent and the credentials used
+	 * to reach it.  Requests with the same key may share a request PDU and a
+	 * cached response.  An SNMPv3 key includes the security level, the
+	 * authentication and privacy protocols and a digest of the passphrases, so
+	 * that requests made with different (or wrong) keys never share a response.
+	 * 
+	 * @return the key for the target SNMP Agent and credentials
+	 */
+	String getSessionKey() {
+		if (this.snmpVersion == SnmpGatewayCredentials.SNMP_VERSION_3) {
+			return this.snmpVersion + "/" + this.targetAddress + "/" + this.targetPort + "/" +
+				   this.securityName + "/" + this.contextName + "/" + this.getSecurityLevel() + "/" +
+				   this.authProtocol + "/" + this.privProtocol + "/" + this.getPassphraseDigest();
+		}
+		return this.snmpVersion + "/" + this.targetAddress + "/" + this.targetPort + "/" + this.targetCommunity;
+	}
+	
+	/**
+	 * Get a SHA-256 digest of the authentication and privacy passphrases, in
+	 * hex, so that the session key and the engine cache distinguish them
+	 * without holding them.
+	 * 
+	 * @return the digest of the passphrases
+	 */
+	String getPassphraseDigest() {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		// the lengths keep ("ab", "c") apart from ("a", "bc")
+		String auth = (this.authPassphrase == null) ? "" : this.authPassphrase;
+		String priv = (this.privPassphrase == null) ? "" : this.privPassphrase;
+		md.update((auth.length() + ":" + auth + priv.length() + ":" + priv).getBytes(SnmpGatewayCredentials.UTF8));
+		
+		StringBuilder hex = new StringBuilder();
+		for (byte b : md.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
 }
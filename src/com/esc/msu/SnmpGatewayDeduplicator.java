@@ -0,0 +1,189 @@
+package com.esc.msu;
+
+import java.util.HashMap;
+import java.util.StringTokenizer;
+import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * suppresses repeats of an SNMP event notification within a deduplication window.
+ * <p>
+ * Notifications are keyed on the sender's IP address, the event type and the
+ * values of the selected varbinds (for example ifIndex).  The first
+ * notification for a key is delivered at once and opens a window; repeats
+ * within the window are suppressed.  When the window closes, if there were
+ * repeats, the last repeat is delivered once with its repeat count and the
+ * first and last seen times.
+ * <p>
+ * Open windows are kept in a ring of time buckets, each covering a fraction
+ * of the window; expiring a bucket closes every window opened in it.  At most
+ * maxKeys windows are open at once; notifications beyond that are delivered
+ * without deduplication, so memory stays bounded however many senders there are.
+ */
+public class SnmpGatewayDeduplicator {
+
+	/**
+	 * the number of time buckets covering one window
+	 */
+	private final static int BUCKETS = 4;
+
+	/**
+	 * an open deduplication window
+	 */
+	private static class Window {
+		final String key;
+		final long firstSeen;
+		long lastSeen;
+		int repeats = 0;
+		SnmpGatewayEvent last;
+
+		Window(String key, long firstSeen) {
+			this.key = key;
+			this.firstSeen = firstSeen;
+			this.lastSeen = firstSeen;
+		}
+	}
+
+	private final SnmpGateway sg;
+	private final OID[] varbindPrefixes;
+	private final int maxKeys;
+	private final HashMap<String, Window> windows = new HashMap<String, Window>();
+	private final Vector<Vector<Window>> buckets = new Vector<Vector<Window>>(SnmpGatewayDeduplicator.BUCKETS + 1);
+	private final AtomicLong suppressed = new AtomicLong(0);
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	/**
+	 * construct a deduplicator
+	 *
+	 * @param sg the SNMP Gateway delivering the repeat summaries
+	 * @param window the deduplication window in milliseconds
+	 * @param varbinds the comma separated OID prefixes of the varbinds whose
+	 *        values are part of the key, or null
+	 * @param maxKeys the maximum number of open windows
+	 */
+	SnmpGatewayDeduplicator(SnmpGateway sg, long window, String varbinds, int maxKeys) {
+		this.sg = sg;
+		this.maxKeys = maxKeys;
+
+		Vector<OID> prefixes = new Vector<OID>();
+		if (varbinds != null) {
+			StringTokenizer st = new StringTokenizer(varbinds, ", \t");
+			while (st.hasMoreTokens()) {
+				prefixes.add(new OID(st.nextToken()));
+			}
+		}
+		this.varbindPrefixes = prefixes.toArray(new OID[prefixes.size()]);
+
+		// one more bucket than the window covers, so that no window closes early
+		for (int i = 0; i <= SnmpGatewayDeduplicator.BUCKETS; i++) {
+			this.buckets.add(new Vector<Window>());
+		}
+		long tick = Math.max(1, window / SnmpGatewayDeduplicator.BUCKETS);
+		this.scheduler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				SnmpGatewayDeduplicator.this.expire();
+			}
+		}, tick, tick, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * determine whether a notification should be delivered
+	 *
+	 * @param e the SNMP event notification
+	 * @return true if the notification opens a window (or no window is
+	 *         available) and should be delivered; false if it is a repeat
+	 */
+	boolean admit(SnmpGatewayEvent e) {
+		String key = this.getKey(e);
+		long now = e.getTimeReceivedMillis();
+
+		synchronized (this) {
+			Window w = this.windows.get(key);
+			if (w != null) {
+				w.repeats++;
+				w.lastSeen = now;
+				w.last = e;
+				this.suppressed.incrementAndGet();
+				return false;
+			}
+			if (this.windows.size() < this.maxKeys) {
+				w = new Window(key, now);
+				this.windows.put(key, w);
+				this.buckets.lastElement().add(w);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * build the deduplication key of a notification
+	 */
+	@SuppressWarnings("unchecked")
+	private String getKey(SnmpGatewayEvent e) {
+		StringBuilder k = new StringBuilder(64);
+		k.append(e.getSenderAddress()).append('|').append(e.getEventType());
+
+		PDU pdu = e.getPDU();
+		if ((this.varbindPrefixes.length > 0) && (pdu != null)) {
+			for (VariableBinding vb : (Vector<VariableBinding> )pdu.getVariableBindings()) {
+				for (OID prefix : this.varbindPrefixes) {
+					if (vb.getOid().startsWith(prefix)) {
+						k.append('|').append(vb.getOid()).append('=').append(vb.getVariable());
+						break;
+					}
+				}
+			}
+		}
+		return k.toString();
+	}
+
+	/**
+	 * close the windows of the oldest bucket and deliver the repeat
+	 * summaries of those that saw repeats
+	 */
+	private void expire() {
+		Vector<Window> expired;
+
+		synchronized (this) {
+			expired = this.buckets.remove(0);
+			this.buckets.add(new Vector<Window>());
+			for (Window w : expired) {
+				this.windows.remove(w.key);
+			}
+		}
+		for (Window w : expired) {
+			if (w.repeats > 0) {
+				this.sg.inboundRepeat(w.last, w.repeats + 1, w.firstSeen, w.lastSeen);
+			}
+		}
+	}
+
+	/**
+	 * add the counters of this deduplicator to a set of statistics
+	 *
+	 * @param stats the statistics to which the counters are added
+	 */
+	void addStatistics(HashMap<String, Long> stats) {
+		stats.put("Suppressed", Long.valueOf(this.suppressed.get()));
+		synchronized (this) {
+			stats.put("DedupWindows", Long.valueOf(this.windows.size()));
+		}
+	}
+
+	/**
+	 * stop deduplicating; repeat summaries of open windows are discarded
+	 */
+	void stop() {
+		this.scheduler.shutdownNow();
+		synchronized (this) {
+			this.windows.clear();
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.esc.msu;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.snmp4j.Snmp;
+import org.snmp4j.UserTarget;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * caches the SNMPv3 authoritative engine ID of each target SNMP Agent and the
+ * keys of each SNMPv3 user localized to that engine.
+ * <p>
+ * Only the first request to an SNMP Agent pays for the engine discovery
+ * round-trip and for key localization; later requests are sent with the
+ * cached engine ID and the localized user already present in the USM.  The
+ * engine boots and time learned during discovery are kept by the USM itself.
+ * The cache remembers which protocols and passphrases each user was localized
+ * with by a digest of the passphrases, never the passphrases themselves.
+ * <p>
+ * The USM holds a single set of localized keys per engine and user name, so
+ * credentials naming the same user with different protocols or passphrases
+ * cannot be used against the same engine at the same time.  While a request
+ * prepared with one set of keys may still be outstanding- for the target's
+ * timeout times its retries plus one- preparing a request with another fails
+ * with an IOException; after that the new keys replace the old, as when a
+ * passphrase is changed.
+ */
+public class SnmpGatewayEngineCache {
+
+	private final Snmp session;
+	private final ConcurrentHashMap<Address, byte[]> engineIDs = new ConcurrentHashMap<Address, byte[]>();
+	/**
+	 * the users localized, by engine ID and user name
+	 */
+	private final HashMap<String, LocalizedUser> localizedUsers = new HashMap<String, LocalizedUser>();
+
+	/**
+	 * the keys of a user localized to an engine
+	 */
+	private static class LocalizedUser {
+		/**
+		 * the protocols and the digest of the passphrases of the keys
+		 */
+		final String secrets;
+		/**
+		 * the time until which a request prepared with the keys may be outstanding
+		 */
+		long inUseUntil;
+
+		LocalizedUser(String secrets, long inUseUntil) {
+			this.secrets = secrets;
+			this.inUseUntil = inUseUntil;
+		}
+	}
+
+	/**
+	 * construct an engine cache for the shared SNMP request session
+	 *
+	 * @param session the SNMP session on which engine discovery is carried out
+	 */
+	SnmpGatewayEngineCache(Snmp session) {
+		this.session = session;
+	}
+
+	/**
+	 * prepare an SNMPv3 target for a request: discover the authoritative engine ID
+	 * of the target SNMP Agent if it is not yet cached, and add the user with
+	 * keys localized to that engine to the USM if not already present
+	 *
+	 * @param cred the set of SNMPv3 credentials for the target SNMP Agent
+	 * @param target the SNMP4J target created from the credentials
+	 *
+	 * @throws IOException if the authoritative engine ID cannot be discovered,
+	 *         or the user is in use at the engine with other keys
+	 */
+	void prepare(SnmpGatewayCredentials cred, UserTarget target) throws IOException {
+		byte[] engineID = this.getEngineID(target.getAddress(), target.getTimeout());
+		if (engineID == null) {
+			throw new IOException("Unable to discover the authoritative engine ID of " +
+								  cred.getTargetAddress());
+		}
+		this.localizeUser(engineID, cred, target.getTimeout() * (target.getRetries() + 1));
+		target.setAuthoritativeEngineID(engineID);
+	}
+
+	/**
+	 * get the authoritative engine ID of an SNMP Agent, discovering it if not cached
+	 *
+	 * @param address the address of the SNMP Agent
+	 * @param timeout the time in milliseconds to wait for the discovery response
+	 * @return the authoritative engine ID, or null if it could not be discovered
+	 */
+	private byte[] getEngineID(Address address, long timeout) {
+		byte[] engineID = this.engineIDs.get(address);
+		if (engineID == null) {
+			engineID = this.session.discoverAuthoritativeEngineID(address, timeout);
+			if ((engineID != null) && (engineID.length > 0)) {
+				this.engineIDs.put(address, engineID);
+			} else {
+				engineID = null;
+			}
+		}
+		return engineID;
+	}
+
+	/**
+	 * add the SNMPv3 user of the credentials with keys localized to the engine,
+	 * unless that user is already present with the same protocols and passphrases
+	 *
+	 * @param lifetime the time in milliseconds a request prepared with the
+	 *        keys may be outstanding
+	 * @throws IOException if the user is in use at the engine with other keys
+	 */
+	private void localizeUser(byte[] engineID, SnmpGatewayCredentials cred, long lifetime) throws IOException {
+		String key = new OctetString(engineID).toHexString() + "/" + cred.getSecurityName();
+		String secrets = cred.getAuthProtocol() + "/" + cred.getPrivProtocol() + "/" +
+						 cred.getPassphraseDigest();
+		long now = System.currentTimeMillis();
+
+		synchronized (this.localizedUsers) {
+			LocalizedUser u = this.localizedUsers.get(key);
+			if (u != null) {
+				if (u.secrets.equals(secrets)) {
+					u.inUseUntil = Math.max(u.inUseUntil, now + lifetime);
+					return;
+				}
+				if (u.inUseUntil > now) {
+					throw new IOException("SNMPv3 user " + cred.getSecurityName() + " is in use at the engine of " +
+										  cred.getTargetAddress() + " with other protocols or passphrases");
+				}
+			}
+			this.addLocalizedUser(engineID, cred);
+			this.localizedUsers.put(key, new LocalizedUser(secrets, now + lifetime));
+		}
+	}
+
+	/**
+	 * add the SNMPv3 user of the credentials to the USM with keys localized
+	 * to the engine, replacing any keys of that user at that engine
+	 */
+	private void addLocalizedUser(byte[] engineID, SnmpGatewayCredentials cred) {
+		OctetString userName = new OctetString(cred.getSecurityName());
+
+		SecurityProtocols protocols = SecurityProtocols.getInstance();
+		OID authProtocol = cred.getAuthProtocolID();
+		OID privProtocol = cred.getPrivProtocolID();
+		byte[] authKey = null;
+		byte[] privKey = null;
+		if (authProtocol != null) {
+			authKey = protocols.passwordToKey(authProtocol,
+											  new OctetString(cred.getAuthPassphrase()), engineID);
+			if (privProtocol != null) {
+				privKey = protocols.passwordToKey(privProtocol, authProtocol,
+												  new OctetString(cred.getPrivPassphrase()), engineID);
+			}
+		}
+
+		USM usm = this.session.getUSM();
+		usm.addLocalizedUser(engineID, userName, authProtocol, authKey, privProtocol, privKey);
+	}
+
+	/**
+	 * forget the cached engine ID of an SNMP Agent, so that the next request
+	 * to it rediscovers the engine (for example after the agent is replaced)
+	 *
+	 * @param address the address of the SNMP Agent
+	 */
+	void forget(Address address) {
+		this.engineIDs.remove(address);
+	}
+}
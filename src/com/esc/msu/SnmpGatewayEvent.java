@@ -4,7 +4,8 @@ import org.snmp4j.CommandResponderEvent;
 import org.snmp4j.PDU;
 import org.snmp4j.PDUv1;
 import org.snmp4j.security.SecurityModel;
-import org.snmp4j.smi.SMIConstants;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.IpAddress;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.Variable;
 import org.snmp4j.smi.VariableBinding;
@@ -12,24 +13,75 @@ import org.snmp4j.smi.VariableBinding;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * comprises an SNMP event notification received by the SNMP Gateway event listener
+ * <p>
+ * The notification is decoded lazily: nothing beyond the PDU type is examined
+ * until a getter is called, the varbinds are scanned once for the timestamp
+ * and trap OID, and the texts of event types and versions are shared between
+ * notifications rather than rebuilt for each one.
  *
  */
 public class SnmpGatewayEvent {
 
+	/**
+	 * the most event type texts kept for sharing between notifications
+	 */
+	private final static int MAX_TYPE_NAMES = 4096;
+	/**
+	 * the shared event type texts of enterprise specific notifications, by trap OID
+	 */
+	private final static ConcurrentHashMap<OID, String> typeNames = new ConcurrentHashMap<OID, String>();
+	/**
+	 * the shared version texts, by security model and PDU type
+	 */
+	private final static ConcurrentHashMap<Integer, String> versionNames = new ConcurrentHashMap<Integer, String>();
+
 	private final CommandResponderEvent event;
-	private final Date timeReceived = new Date();
+	private final long timeReceived;
+	private final long nanosReceived;
 	private final PDU pdu;
 	private final int pduType;
+	private volatile boolean decoded = false;
+	private Variable upTime;
+	private OID notificationOID;
+	private String timeReceivedText;
+	private String eventType;
+	private String securityName;
+	private volatile SnmpGatewayJournal.Record journalRecord;
 	public  final static OID sysUpTime   = new OID("1.3.6.1.2.1.1.3.0");
 	public  final static OID snmpTrapOID = new OID("1.3.6.1.6.3.1.1.4.1.0");
 	public  final static OID snmpGenericPrefix = new OID("1.3.6.1.6.3.1.1.5");
 	public  final static int EGPNEIGHBORLOSS = 5;
 	
 	SnmpGatewayEvent(CommandResponderEvent e) {
+		this(e, System.currentTimeMillis(), System.nanoTime());
+	}
+	
+	/**
+	 * construct an SNMP event notification received at a given time, as when
+	 * it is replayed from the journal
+	 * @param e the received notification
+	 * @param timeReceived the time the notification was received
+	 */
+	SnmpGatewayEvent(CommandResponderEvent e, long timeReceived) {
+		this(e, timeReceived, 0);
+	}
+	
+	/**
+	 * construct an SNMP event notification decoded some time after it was
+	 * received, as when it waited on a lane
+	 * @param e the received notification
+	 * @param timeReceived the time the notification was received
+	 * @param nanosReceived the System.nanoTime() at which the notification
+	 *        was received, or 0 if it was replayed from the journal
+	 */
+	SnmpGatewayEvent(CommandResponderEvent e, long timeReceived, long nanosReceived) {
 		this.event = e;
+		this.timeReceived = timeReceived;
+		this.nanosReceived = nanosReceived;
 		this.pdu = e.getPDU();
 		if (this.pdu != null){
 			this.pduType = this.pdu.getType();
@@ -43,7 +95,12 @@ public class SnmpGatewayEvent {
 	 * @return the date and time this SNMP Event Notification was received
 	 */
 	public String getTimeReceived() {
-		return this.timeReceived.toString();
+		String t = this.timeReceivedText;
+		if (t == null) {
+			t = new Date(this.timeReceived).toString();
+			this.timeReceivedText = t;
+		}
+		return t;
 	}
 	
 	/**
@@ -54,6 +111,148 @@ public class SnmpGatewayEvent {
 		return this.event.getPeerAddress().toString();
 	}
 	
+	/**
+	 * get the time this SNMP Event Notification was received
+	 * @return the time received in milliseconds since the epoch
+	 */
+	long getTimeReceivedMillis() {
+		return this.timeReceived;
+	}
+	
+	/**
+	 * get the System.nanoTime() at which this SNMP Event Notification was received
+	 * @return the time received in nanoseconds, or 0 if the notification
+	 *         was replayed from the journal
+	 */
+	long getNanosReceived() {
+		return this.nanosReceived;
+	}
+	
+	/**
+	 * get the IP address, without the port, of the sender of this SNMP Event Notification
+	 * @return the IP address of the sender
+	 */
+	String getSenderAddress() {
+		Address a = this.event.getPeerAddress();
+		if (a instanceof IpAddress) {
+			return ((IpAddress )a).getInetAddress().getHostAddress();
+		}
+		return a.toString();
+	}
+	
+	/**
+	 * get the IP address of the sender of this SNMP Event Notification as raw bytes
+	 * @return the IP address of the sender, or null if it is not an IP address
+	 */
+	byte[] getSenderAddressBytes() {
+		Address a = this.event.getPeerAddress();
+		if (a instanceof IpAddress) {
+			return ((IpAddress )a).getInetAddress().getAddress();
+		}
+		return null;
+	}
+	
+	/**
+	 * get the short name of the SNMP version of this SNMP Event Notification
+	 * @return "v1", "v2c", "v3" or "" if the security model is undefined
+	 */
+	String getVersionName() {
+		switch(this.event.getSecurityModel()) {
+		case SecurityModel.SECURITY_MODEL_SNMPv1:
+			return "v1";
+		case SecurityModel.SECURITY_MODEL_SNMPv2c:
+			return "v2c";
+		case SecurityModel.SECURITY_MODEL_USM:
+			return "v3";
+		}
+		return "";
+	}
+	
+	/**
+	 * get the SNMPv2 trap OID of this SNMP Event Notification; an SNMPv1 trap
+	 * is translated as in RFC 3584- a generic trap to snmpTraps.(generic + 1),
+	 * an enterprise specific trap to enterprise.0.specific
+	 * @return the trap OID, or null if it is not present
+	 */
+	OID getTrapOID() {
+		switch(this.pduType) {
+		case PDU.NOTIFICATION:
+		case PDU.INFORM:
+			this.decode();
+			return this.notificationOID;
+		case PDU.V1TRAP:
+			PDUv1 pduV1 = (PDUv1 )this.pdu;
+			if (pduV1.getGenericTrap() == PDUv1.ENTERPRISE_SPECIFIC) {
+				OID s = new OID(pduV1.getEnterprise());
+				s.append(0);
+				s.append(pduV1.getSpecificTrap());
+				return s;
+			}
+			OID t = new OID(SnmpGatewayEvent.snmpGenericPrefix);
+			t.append(pduV1.getGenericTrap() + 1);
+			return t;
+		}
+		return null;
+	}
+	
+	/**
+	 * scan the varbinds of a v2c/v3 notification once for the sysUpTime
+	 * and snmpTrapOID varbinds
+	 */
+	@SuppressWarnings("unchecked")
+	private void decode() {
+		if (this.decoded) {
+			return;
+		}
+		Vector<VariableBinding> vbs = (Vector<VariableBinding> )this.pdu.getVariableBindings();
+		Variable u = null;
+		OID t = null;
+		boolean trapOIDSeen = false;
+		
+		// the timestamp and trapOID are *supposed* to be in the first and second varbinds...
+		for (int i = 0; i < vbs.size() && (u == null || !trapOIDSeen); i++) {
+			VariableBinding vb = vbs.get(i);
+			OID o = vb.getOid();
+			if (u == null && o.startsWith(SnmpGatewayEvent.sysUpTime)) {
+				u = vb.getVariable();
+			} else if (!trapOIDSeen && o.size() == SnmpGatewayEvent.snmpTrapOID.size() &&
+					   o.startsWith(SnmpGatewayEvent.snmpTrapOID)) {
+				trapOIDSeen = true;
+				Variable v = vb.getVariable();
+				if (v instanceof OID) {
+					t = (OID )v;
+				}
+			}
+		}
+		this.upTime = u;
+		this.notificationOID = t;
+		this.decoded = true;
+	}
+	
+	/**
+	 * get the position of this SNMP Event Notification in the journal
+	 * @return the journal record, or null if the notification is not journaled
+	 */
+	SnmpGatewayJournal.Record getJournalRecord() {
+		return this.journalRecord;
+	}
+	
+	/**
+	 * set the position of this SNMP Event Notification in the journal
+	 * @param r the journal record
+	 */
+	void setJournalRecord(SnmpGatewayJournal.Record r) {
+		this.journalRecord = r;
+	}
+	
+	/**
+	 * get the PDU of this SNMP Event Notification
+	 * @return the PDU, or null if it is missing
+	 */
+	PDU getPDU() {
+		return this.pdu;
+	}
+	
 	/**
 	 * get the event notification varbindlist as a HashMap<String(OID), String<Value)>
 	 * <p>
@@ -66,13 +265,14 @@ public class SnmpGatewayEvent {
 	 */
 	@SuppressWarnings("unchecked")
 	public HashMap<String, String> getEventVarbinds() {
-		HashMap<String, String> vbl = new HashMap<String, String>();
+		if (this.pdu == null) {
+			return new HashMap<String, String>();
+		}
 		
-		if (this.pdu != null) {	
-			Vector<VariableBinding> vbs = this.pdu.getVariableBindings();
-			for(VariableBinding vb : vbs) {
-				vbl.put(vb.getOid().toString(), vb.getVariable().toString());
-			}
+		Vector<VariableBinding> vbs = this.pdu.getVariableBindings();
+		HashMap<String, String> vbl = new HashMap<String, String>(vbs.size() * 4 / 3 + 1);
+		for(VariableBinding vb : vbs) {
+			vbl.put(vb.getOid().toString(), vb.getVariable().toString());
 		}
 		return vbl;
 	}
@@ -82,23 +282,30 @@ public class SnmpGatewayEvent {
 	 * @return  the version for this SNMP Event Notification
 	 */
 	public String getEventVersion() {
-		String v = "";
+		int model = this.event.getSecurityModel();
+		Integer key = Integer.valueOf((model << 8) | (this.pduType & 0xff));
+		String v = SnmpGatewayEvent.versionNames.get(key);
 		
-		switch(this.event.getSecurityModel()) {
-		case SecurityModel.SECURITY_MODEL_ANY:
-			v = new String("Security model undefined");
-			break;
-		case SecurityModel.SECURITY_MODEL_SNMPv1:
-			v = new String("SNMP v1 " + PDU.getTypeString(this.pduType));
-			break;
-		case SecurityModel.SECURITY_MODEL_SNMPv2c:
-			v = new String("SNMP v2c " + PDU.getTypeString(this.pduType));
-			break;
-		case SecurityModel.SECURITY_MODEL_USM:
-			v = new String("SNMP v3 " + PDU.getTypeString(this.pduType));
-			break;
+		if (v == null) {
+			switch(model) {
+			case SecurityModel.SECURITY_MODEL_ANY:
+				v = "Security model undefined";
+				break;
+			case SecurityModel.SECURITY_MODEL_SNMPv1:
+				v = "SNMP v1 " + PDU.getTypeString(this.pduType);
+				break;
+			case SecurityModel.SECURITY_MODEL_SNMPv2c:
+				v = "SNMP v2c " + PDU.getTypeString(this.pduType);
+				break;
+			case SecurityModel.SECURITY_MODEL_USM:
+				v = "SNMP v3 " + PDU.getTypeString(this.pduType);
+				break;
+			default:
+				v = "";
+				break;
+			}
+			SnmpGatewayEvent.versionNames.put(key, v);
 		}
-
 		return v;
 	}
 	
@@ -127,7 +334,10 @@ public class SnmpGatewayEvent {
 	 * @return  the type for this SNMP Event Notification
 	 */
 	public String getEventType() {
-		String v = "PDU is missing";
+		String v = this.eventType;
+		if (v != null) {
+			return v;
+		}
 		
 		switch(this.pduType) {
 		case PDU.NOTIFICATION:
@@ -137,8 +347,12 @@ public class SnmpGatewayEvent {
 		case PDU.V1TRAP:
 			v = this.getTrapType();
 			break;
+		default:
+			v = "PDU is missing";
+			break;
 		}
 		
+		this.eventType = v;
 		return v;
 	}
 
@@ -146,59 +360,58 @@ public class SnmpGatewayEvent {
 	 * get the TimeStamp for this v2c/v3 Trap
 	 * @return the TimeStamp for this v2c/v3 Trap
 	 */	
-	@SuppressWarnings("unchecked")
 	protected String getNotificationTimeStamp() {
-		Vector<VariableBinding> vbs = (Vector<VariableBinding> )this.pdu.getVariableBindings();
-		String ts = null;
-		
-		// the timestamp is *supposed* to be in the first varbind...
-		for (VariableBinding vb: vbs) {
-			if (vb.getOid().leftMostCompare(SnmpGatewayEvent.sysUpTime.size(), SnmpGatewayEvent.sysUpTime) == 0) {
-				ts = new String(vb.getVariable().toString());
-				break;
-			}
-		}
+		this.decode();
 		
-		if (ts == null) {
-			ts = new String("TimeStamp is not present");
+		if (this.upTime == null) {
+			return "TimeStamp is not present";
 		}
-		return ts;
+		return this.upTime.toString();
 	}
 
 	/**
 	 * get the event type for this v2c/v3 Trap
 	 * @return the event type for this v2c/v3 Trap
 	 */
-	@SuppressWarnings("unchecked")
 	protected String getNotificationType() {
-		Vector<VariableBinding> vbs = (Vector<VariableBinding> )this.pdu.getVariableBindings();
+		this.decode();
+		OID type = this.notificationOID;
 		String t = null;
 		
-		// the trapOID is *supposed* to be in the second varbind...
-		for (VariableBinding vb: vbs) {
-			OID o = vb.getOid();
-			if (o.startsWith(SnmpGatewayEvent.snmpTrapOID)  && (o.size() == SnmpGatewayEvent.snmpTrapOID.size())) {
-				Variable v = vb.getVariable();
-				if (v.getSyntax() == SMIConstants.SYNTAX_OBJECT_IDENTIFIER) {
-					OID type = new OID(v.toString());
-					if (type.startsWith(SnmpGatewayEvent.snmpGenericPrefix) && (type.size() == SnmpGatewayEvent.snmpGenericPrefix.size() + 1)) {
-						int g = type.last();
-				    	t = this.getGenericEventString(g);
-					} else {
-						if (type.get(type.size() - 2) == 0) {
-					    	// enterprise specific
-					    	int s = type.last();
-					    	type.trim(2);  
-					    	t = new String("Enterprise(" + type.toString() + ")  specific(" + s + ")");
-						}
-					}
-					break;
+		if (type != null) {
+			if (type.startsWith(SnmpGatewayEvent.snmpGenericPrefix) && (type.size() == SnmpGatewayEvent.snmpGenericPrefix.size() + 1)) {
+				int g = type.last();
+		    	t = this.getGenericEventString(g);
+			} else if (type.size() > 2 && type.get(type.size() - 2) == 0) {
+		    	// enterprise specific
+				t = SnmpGatewayEvent.typeNames.get(type);
+				if (t == null) {
+					OID e = new OID(type.getValue(), 0, type.size() - 2);
+			    	t = SnmpGatewayEvent.getEnterpriseTypeName(type, e, type.last());
 				}
 			}
 		}
 		
 		if (t == null) {
-			t = new String("Event type is not present");
+			t = "Event type is not present";
+		}
+		return t;
+	}
+	
+	/**
+	 * get the shared text of an enterprise specific event type
+	 * @param trapOID the SNMPv2 trap OID of the event
+	 * @param enterprise the enterprise OID
+	 * @param specific the specific trap number
+	 * @return the text of the event type
+	 */
+	private static String getEnterpriseTypeName(OID trapOID, OID enterprise, int specific) {
+		String t = SnmpGatewayEvent.typeNames.get(trapOID);
+		if (t == null) {
+			t = "Enterprise(" + enterprise.toString() + ")  specific(" + specific + ")";
+			if (SnmpGatewayEvent.typeNames.size() < SnmpGatewayEvent.MAX_TYPE_NAMES) {
+				SnmpGatewayEvent.typeNames.putIfAbsent(trapOID, t);
+			}
 		}
 		return t;
 	}
@@ -213,25 +426,25 @@ public class SnmpGatewayEvent {
 		
 		switch(g) {
 		case PDUv1.COLDSTART:
-			t = new String("Cold Start");
+			t = "Cold Start";
 			break;
 		case PDUv1.WARMSTART:
-			t = new String("Warm Start"); //probably never see this one
+			t = "Warm Start"; //probably never see this one
 			break;
 		case PDUv1.LINKDOWN:
-			t = new String("Link Down");
+			t = "Link Down";
 			break;
 		case PDUv1.LINKUP:
-			t = new String("Link Up");
+			t = "Link Up";
 			break;
 		case PDUv1.AUTHENTICATIONFAILURE:
-			t = new String("Authentication Failure");
+			t = "Authentication Failure";
 			break;
 		case SnmpGatewayEvent.EGPNEIGHBORLOSS:
-			t = new String("EGP Neighbor Loss"); //probably never see this one
+			t = "EGP Neighbor Loss"; //probably never see this one
 			break;
 		default:
-			t = new String("Unknown"); 
+			t = "Unknown"; 
 			break;
 		}
 		return t;
@@ -260,7 +473,7 @@ public class SnmpGatewayEvent {
 		int g = pduV1.getGenericTrap();
 		
 		if (g == PDUv1.ENTERPRISE_SPECIFIC) {
-			t = new String("Enterprise(" + e.toString() + ")  specific(" + s + ")");
+			t = SnmpGatewayEvent.getEnterpriseTypeName(this.getTrapOID(), e, s);
 		} else {
 			t = this.getGenericEventString(g);
 			
@@ -273,7 +486,11 @@ public class SnmpGatewayEvent {
 	}
 	
 	public String getSecurityName() {
-		String s = new String(this.event.getSecurityName());
+		String s = this.securityName;
+		if (s == null) {
+			s = new String(this.event.getSecurityName());
+			this.securityName = s;
+		}
 		return s;
 	}
 	
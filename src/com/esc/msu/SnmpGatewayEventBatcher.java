@@ -0,0 +1,119 @@
+package com.esc.msu;
+
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * collects the event data of SNMP event notifications into batches, so that
+ * many notifications are delivered to a CFC in a single CFEvent.
+ * <p>
+ * A batch is delivered when it holds maxSize notifications, or maxLinger
+ * milliseconds after its first notification arrived, whichever comes first.
+ */
+public class SnmpGatewayEventBatcher {
+
+	private final SnmpGateway sg;
+	private final int maxSize;
+	private final long maxLinger;
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private Vector<Map<String, Object>> batch;
+	private Vector<SnmpGatewayEvent> sources;
+
+	/**
+	 * construct an event notification batcher
+	 *
+	 * @param sg the SNMP Gateway delivering the batches
+	 * @param maxSize the maximum number of notifications in a batch
+	 * @param maxLinger the maximum time in milliseconds a notification waits
+	 *        for its batch to be delivered
+	 */
+	SnmpGatewayEventBatcher(SnmpGateway sg, int maxSize, long maxLinger) {
+		this.sg = sg;
+		this.maxSize = Math.max(1, maxSize);
+		this.maxLinger = Math.max(1, maxLinger);
+		this.batch = new Vector<Map<String, Object>>(this.maxSize);
+		this.sources = new Vector<SnmpGatewayEvent>(this.maxSize);
+	}
+
+	/**
+	 * add the event data of a notification to the current batch
+	 *
+	 * @param eventData the event data of the notification
+	 * @param source the notification, completed when its batch is delivered,
+	 *        or null
+	 */
+	void add(Map<String, Object> eventData, SnmpGatewayEvent source) {
+		Vector<Map<String, Object>> full = null;
+		Vector<SnmpGatewayEvent> fullSources = null;
+
+		synchronized (this) {
+			final Vector<Map<String, Object>> b = this.batch;
+			b.add(eventData);
+			if (source != null) {
+				this.sources.add(source);
+			}
+			if (b.size() >= this.maxSize) {
+				fullSources = this.sources;
+				full = this.take();
+			} else if (b.size() == 1) {
+				this.scheduler.schedule(new Runnable() {
+					public void run() {
+						SnmpGatewayEventBatcher.this.linger(b);
+					}
+				}, this.maxLinger, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (full != null) {
+			this.sg.inboundBatch(full, fullSources);
+		}
+	}
+
+	/**
+	 * deliver a batch whose linger time has expired, unless it was already
+	 * delivered because it became full
+	 */
+	private void linger(Vector<Map<String, Object>> b) {
+		Vector<Map<String, Object>> expired = null;
+		Vector<SnmpGatewayEvent> expiredSources = null;
+
+		synchronized (this) {
+			if (this.batch == b) {
+				expiredSources = this.sources;
+				expired = this.take();
+			}
+		}
+		if (expired != null) {
+			this.sg.inboundBatch(expired, expiredSources);
+		}
+	}
+
+	/**
+	 * take the current batch, replacing it and its sources with empty ones
+	 */
+	private Vector<Map<String, Object>> take() {
+		Vector<Map<String, Object>> b = this.batch;
+		this.batch = new Vector<Map<String, Object>>(this.maxSize);
+		this.sources = new Vector<SnmpGatewayEvent>(this.maxSize);
+		return b;
+	}
+
+	/**
+	 * stop batching, delivering the current batch if it is not empty
+	 */
+	void stop() {
+		Vector<Map<String, Object>> last;
+		Vector<SnmpGatewayEvent> lastSources;
+
+		this.scheduler.shutdownNow();
+		synchronized (this) {
+			lastSources = this.sources;
+			last = this.take();
+		}
+		if (!last.isEmpty()) {
+			this.sg.inboundBatch(last, lastSources);
+		}
+	}
+}
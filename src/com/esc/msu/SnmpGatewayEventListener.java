@@ -4,10 +4,12 @@
 package com.esc.msu;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.snmp4j.CommandResponderEvent;
 import org.snmp4j.CommunityTarget;
-import org.snmp4j.MessageDispatcher;
 import org.snmp4j.MessageDispatcherImpl;
 import org.snmp4j.MessageException;
 import org.snmp4j.PDU;
@@ -29,8 +31,6 @@ import org.snmp4j.tools.console.SnmpRequest;
 import org.snmp4j.transport.AbstractTransportMapping;
 import org.snmp4j.transport.DefaultTcpTransportMapping;
 import org.snmp4j.transport.DefaultUdpTransportMapping;
-import org.snmp4j.util.MultiThreadedMessageDispatcher;
-import org.snmp4j.util.ThreadPool;
 
 /**
  * The SNMP Gateway listener for SNMP event notifications
@@ -38,9 +38,34 @@ import org.snmp4j.util.ThreadPool;
  */
 public class SnmpGatewayEventListener extends SnmpRequest implements Runnable {
 
+	/**
+	 * the most message buffers kept in the pool of a lane
+	 */
+	private final static int MAX_POOL_SIZE = 64;
+
 	private SnmpGateway sg;
+	/**
+	 * the maximum number of event notifications queued on all lanes of this listener
+	 */
+	private final int capacity;
     private AbstractTransportMapping transport;
-    private ThreadPool threadPool;
+    /**
+     * bounded queues, each drained by its own thread (in the virtual thread
+     * mode, by a virtual thread started whenever it has notifications), on
+     * which event notifications are decoded and processed.  Every
+     * notification from a given sender is processed on the same lane, in
+     * the order received; notifications from different senders are
+     * processed in parallel.
+     */
+    private SnmpGatewayEventQueue[] lanes;
+    /**
+     * the threads draining the lanes
+     */
+    private ExecutorService laneExec;
+    /**
+     * the dispatcher queuing each received message on its sender's lane
+     */
+    private SnmpGatewayLaneDispatcher dispatcher;
     private Snmp snmp;
     private OctetString localEngineID = new OctetString(MPv3.createLocalEngineID());
 
@@ -49,11 +74,13 @@ public class SnmpGatewayEventListener extends SnmpRequest implements Runnable {
      * constructor for the SNMP Gateway event listener
      * @param sg reference to the SNMP Gateway instance
      * @param arg0 the command line options for the underlying org.snmp4j.tools.console.SnmpReqeust class
+     * @param capacity the maximum number of event notifications queued on all
+     *        lanes of this listener
      */
-	public SnmpGatewayEventListener(SnmpGateway sg, String[] arg0) {
+	public SnmpGatewayEventListener(SnmpGateway sg, String[] arg0, int capacity) {
 		super(arg0);
-		// TODO Auto-generated constructor stub
 		this.sg = sg;
+		this.capacity = capacity;
 	}
 
 	/**
@@ -69,28 +96,78 @@ public class SnmpGatewayEventListener extends SnmpRequest implements Runnable {
 	}
 	
 	/**
-	 * override class for establishing the event listener
+	 * override class for establishing the event listener; the listener is
+	 * opened unless open() has been called already, then waits until stopped
 	 */
 	public synchronized void listen() throws IOException {
+		if (this.snmp == null) {
+			this.open();
+		}
+		try {
+		    this.wait();
+		} catch (InterruptedException ex) {
+		    Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * bind the listener's socket and start its lanes and reader thread, so
+	 * that a socket which cannot be bound is reported to the caller
+	 * 
+	 * @throws IOException if the socket cannot be bound
+	 */
+	synchronized void open() throws IOException {
 
 		if (this.getAddress() instanceof TcpAddress) {
 		    this.transport = new DefaultTcpTransportMapping((TcpAddress) this.getAddress());
+		} else if (this.sg.isListenerDirectTransport()) {
+		    this.transport = new SnmpGatewayUdpTransport(this.sg, (UdpAddress) this.getAddress(),
+		    											 this.sg.getListenerReceiveBuffer());
+		} else {
+		    DefaultUdpTransportMapping udp = new DefaultUdpTransportMapping((UdpAddress) this.getAddress());
+		    if (this.sg.getListenerReceiveBuffer() > 0) {
+		    	udp.setReceiveBufferSize(this.sg.getListenerReceiveBuffer());
+		    }
+		    this.transport = udp;
+		}
+		this.lanes = new SnmpGatewayEventQueue[this.sg.getDispatcherThreads()];
+		this.laneExec = this.sg.newDispatcherExecutor(this.lanes.length);
+		if (this.sg.isDispatcherVirtual()) {
+			// each lane with notifications is drained by a virtual thread of its own,
+			// and the lanes share the capacity
+			AtomicInteger depth = new AtomicInteger(0);
+			for (int i = 0; i < this.lanes.length; i++) {
+				this.lanes[i] = new SnmpGatewayEventQueue(this.sg,
+														  this.capacity,
+														  this.sg.getIngressShedPolicy(),
+														  this.sg.getIngressSampleRate(),
+														  depth, this.laneExec);
+			}
 		} else {
-		    this.transport = new DefaultUdpTransportMapping((UdpAddress) this.getAddress());
+			for (int i = 0; i < this.lanes.length; i++) {
+				this.lanes[i] = new SnmpGatewayEventQueue(this.sg,
+														  this.capacity / this.lanes.length,
+														  this.sg.getIngressShedPolicy(),
+														  this.sg.getIngressSampleRate());
+				this.laneExec.execute(this.lanes[i]);
+			}
 		}
-		this.threadPool = ThreadPool.create("DispatcherPool", this.getNumDispatcherThreads());
-		MessageDispatcher mtDispatcher = new MultiThreadedMessageDispatcher(threadPool, new MessageDispatcherImpl());
+		// the transport thread only queues each message on its sender's lane,
+		// where it is decoded in the order received
+		SnmpGatewayLaneDispatcher dispatcher = new SnmpGatewayLaneDispatcher(this.sg, new MessageDispatcherImpl(),
+																			 this.lanes, this.getPoolSize());
+		this.dispatcher = dispatcher;
 
 		// add message processing models
-		mtDispatcher.addMessageProcessingModel(new MPv1());
-		mtDispatcher.addMessageProcessingModel(new MPv2c());
-		mtDispatcher.addMessageProcessingModel(new MPv3(this.localEngineID.getValue()));
+		dispatcher.addMessageProcessingModel(new MPv1());
+		dispatcher.addMessageProcessingModel(new MPv2c());
+		dispatcher.addMessageProcessingModel(new MPv3(this.localEngineID.getValue()));
 
 		// add all security protocols
 		SecurityProtocols.getInstance().addDefaultProtocols();
 		SecurityProtocols.getInstance().addPrivacyProtocol(new Priv3DES());
 
-		this.snmp = new Snmp(mtDispatcher, transport);
+		this.snmp = new Snmp(dispatcher, transport);
 		if (this.getVersion() == SnmpConstants.version3) {
 		    USM usm = new USM(SecurityProtocols.getInstance(), localEngineID, 0);
 		    SecurityModels.getInstance().addSecurityModel(usm);
@@ -109,41 +186,101 @@ public class SnmpGatewayEventListener extends SnmpRequest implements Runnable {
 
 		transport.listen();
 		//System.out.println("Listening on "+ this.getAddress());
-
-		try {
-		    this.wait();
-		} catch (InterruptedException ex) {
-		    Thread.currentThread().interrupt();
-		}
 	}
 
 
 	/**
-	 * override class for procesing an incoming SNMP message
+	 * get the most message buffers kept in the pool of each lane- a lane's
+	 * share of the capacity, up to MAX_POOL_SIZE
+	 * 
+	 * @return the pool size
+	 */
+	private int getPoolSize() {
+		return Math.min(SnmpGatewayEventListener.MAX_POOL_SIZE, Math.max(1, this.capacity / this.lanes.length));
+	}
+
+	/**
+	 * override class for procesing an incoming SNMP message, called on the
+	 * lane of its sender once the message is decoded.
+	 * <p>
+	 * An INFORM is answered immediately (unless replayed from the journal,
+	 * long after its sender gave up on the response); a retransmitted INFORM
+	 * is answered again but not processed again.  A notification from a
+	 * sender that has exceeded its rate limit is dropped before its event
+	 * data is built.  The event notification is then journaled, decoded, and
+	 * passed to the gateway.
 	 */
-	public synchronized void processPdu(CommandResponderEvent e) {
+	public void processPdu(final CommandResponderEvent e) {
 		PDU command = e.getPDU();
 		if (command != null) {
-		    //e.setProcessed(true);
 			if ((command.getType() == PDU.TRAP)   ||
 				(command.getType() == PDU.V1TRAP) ||
 				(command.getType() == PDU.INFORM)) {
-		        //this.sg.inboundMessage(new SnmpGatewayEvent(e));
+				SnmpGatewayMetrics metrics = this.sg.getMetricsCounters();
+				metrics.trapsReceived.increment();
+				SnmpGatewayLaneDispatcher.Message m = this.dispatcher.getCurrentMessage();
 		        if (command.getType() == PDU.INFORM) {
 		            // try to send INFORM response
-		            try {
-		                sendInformResponse(e);
-		            } catch (MessageException mex) {
-		                this.sg.logWarn("Failed to send response on INFORM PDU event (" +
-		                    	        e + "): " + mex.getMessage());
+		            if (m == null || !m.isReplayed()) {
+			            try {
+			                sendInformResponse(e);
+			                metrics.informsAnswered.increment();
+			            } catch (MessageException mex) {
+			                this.sg.logWarn("Failed to send response on INFORM PDU event (" +
+			                    	        e + "): " + mex.getMessage());
+			            }
+		            }
+		            SnmpGatewayInformCache informs = this.sg.getInformCache();
+		            if (informs != null && informs.isRetransmission(e)) {
+		            	e.setProcessed(true);
+		            	return;
 		            }
 		        }
-		        this.sg.inboundMessage(new SnmpGatewayEvent(e));
 			    e.setProcessed(true);
+			    SnmpGatewayRateLimiter limiter = this.sg.getRateLimiter();
+			    if (limiter != null && !limiter.admit(e.getPeerAddress())) {
+			    	return;
+			    }
+			    SnmpGatewayEvent event = (m != null) ? new SnmpGatewayEvent(e, m.timeReceived, m.nanosReceived)
+			    									 : new SnmpGatewayEvent(e);
+			    SnmpGatewayJournal journal = this.sg.getJournal();
+			    if (journal != null) {
+			    	event.setJournalRecord(journal.append(e, event.getTimeReceivedMillis()));
+			    }
+			    this.sg.inboundMessage(event);
 		    }
 		}
 	}
 
+	/**
+	 * decode a message replayed from the RAW record of a journal on the
+	 * calling thread, as if received by this listener
+	 * 
+	 * @param journal the journal
+	 * @param record the position of the message in the journal
+	 */
+	void replay(SnmpGatewayJournal journal, SnmpGatewayJournal.Record record) {
+		SnmpGatewayLaneDispatcher d = this.dispatcher;
+		if (d != null) {
+			d.replay(this.transport, journal, record);
+		}
+	}
+
+	/**
+	 * add the ingress queue counters of all lanes to a set of statistics- the
+	 * entries Queued, ShedNewest, ShedOldest, ShedSampled and Depth
+	 * 
+	 * @param stats the statistics to which the counters are added
+	 */
+	public void addIngressStatistics(HashMap<String, Long> stats) {
+		SnmpGatewayEventQueue[] l = this.lanes;
+		if (l != null) {
+			for (SnmpGatewayEventQueue lane : l) {
+				lane.addStatistics(stats);
+			}
+		}
+	}
+
     /**
      * send a RESPONSE PDU to the source address of an INFORM notification.
      * 
@@ -185,10 +322,19 @@ public class SnmpGatewayEventListener extends SnmpRequest implements Runnable {
 	 * stop listening for SNMP event notifications and reliquish system resources
 	 */
 	public void stop() {
-		this.threadPool.interrupt();
+		if (this.lanes != null) {
+			for (SnmpGatewayEventQueue lane : this.lanes) {
+				lane.stop();
+			}
+			this.laneExec.shutdownNow();
+		}
 		try {
-			this.transport.close();
-			this.snmp.close();
+			if (this.transport != null) {
+				this.transport.close();
+			}
+			if (this.snmp != null) {
+				this.snmp.close();
+			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -0,0 +1,333 @@
+package com.esc.msu;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * a bounded, lock-free queue of SNMP event notifications between the SNMP
+ * Gateway event listener's receiving thread and the gateway, drained by a
+ * single thread.  Each notification is queued, still undecoded, as the task
+ * which decodes and processes it; see SnmpGatewayLaneDispatcher.  A task
+ * shed from the queue is discarded, which completes it unprocessed; a task
+ * still queued when the queue is stopped is abandoned as it is, so that a
+ * journaled notification is replayed at the next start.
+ * <p>
+ * The queue is either drained by a thread dedicated to it, which runs run(),
+ * or, when constructed with an executor, by a task submitted to the executor
+ * whenever the queue has notifications, which ends once the queue is empty.
+ * A queue may share its capacity with other queues, so that many queues
+ * drained on demand need not each reserve a share of the capacity.
+ * <p>
+ * Offering a notification never blocks the receiving thread.  When the queue
+ * is full a notification is shed according to the shedding policy:
+ * <ul>
+ * <li>drop-newest - the arriving notification is dropped</li>
+ * <li>drop-oldest - the oldest queued notification is dropped to make room</li>
+ * <li>sample - one in every sampleRate notifications from each sender is
+ *     admitted, in place of the oldest queued notification; the others are dropped</li>
+ * </ul>
+ */
+public class SnmpGatewayEventQueue implements Runnable {
+
+	public final static int DROP_NEWEST = 0;
+	public final static int DROP_OLDEST = 1;
+	public final static int SAMPLE      = 2;
+
+	/**
+	 * a queued notification- the task which decodes and processes it
+	 */
+	interface Task extends Runnable {
+		/**
+		 * complete a notification shed from the queue without processing it
+		 */
+		void discard();
+	}
+
+	/**
+	 * the number of per-sender sampling counters; senders hashing to the same
+	 * counter are sampled together
+	 */
+	private final static int SAMPLE_STRIPES = 1024;
+
+	private final SnmpGateway sg;
+	private final int capacity;
+	private final int policy;
+	private final int sampleRate;
+	private final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<Task>();
+	private final AtomicInteger depth = new AtomicInteger(0);
+	/**
+	 * the depth of all the queues sharing the capacity, or null
+	 */
+	private final AtomicInteger shared;
+	/**
+	 * the executor draining the queue on demand, or null
+	 */
+	private final Executor executor;
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final Runnable drainer = new Runnable() {
+		public void run() {
+			SnmpGatewayEventQueue.this.drain();
+		}
+	};
+	private final AtomicIntegerArray sampleCounters = new AtomicIntegerArray(SnmpGatewayEventQueue.SAMPLE_STRIPES);
+	private final AtomicLong queued = new AtomicLong(0);
+	private final AtomicLong shedNewest = new AtomicLong(0);
+	private final AtomicLong shedOldest = new AtomicLong(0);
+	private final AtomicLong shedSampled = new AtomicLong(0);
+	private volatile boolean running = true;
+	private volatile Thread consumer;
+
+	/**
+	 * construct an event notification queue
+	 *
+	 * @param sg the SNMP Gateway whose notifications are queued
+	 * @param capacity the maximum number of queued notifications
+	 * @param policy the shedding policy- DROP_NEWEST, DROP_OLDEST or SAMPLE
+	 * @param sampleRate under the SAMPLE policy, one in every sampleRate
+	 *        notifications from each sender is admitted when the queue is full
+	 */
+	SnmpGatewayEventQueue(SnmpGateway sg, int capacity, int policy, int sampleRate) {
+		this(sg, capacity, policy, sampleRate, null, null);
+	}
+
+	/**
+	 * construct an event notification queue drained on demand
+	 *
+	 * @param sg the SNMP Gateway whose notifications are queued
+	 * @param capacity the maximum number of notifications queued on this
+	 *        queue, or on all the queues sharing the capacity
+	 * @param policy the shedding policy- DROP_NEWEST, DROP_OLDEST or SAMPLE
+	 * @param sampleRate under the SAMPLE policy, one in every sampleRate
+	 *        notifications from each sender is admitted when the queue is full
+	 * @param shared the depth of all the queues sharing the capacity, or
+	 *        null if the capacity is this queue's own
+	 * @param executor the executor to which a task draining the queue is
+	 *        submitted whenever it has notifications, or null if the queue
+	 *        is drained by run()
+	 */
+	SnmpGatewayEventQueue(SnmpGateway sg, int capacity, int policy, int sampleRate,
+						  AtomicInteger shared, Executor executor) {
+		this.sg = sg;
+		this.capacity = Math.max(1, capacity);
+		this.policy = policy;
+		this.sampleRate = Math.max(1, sampleRate);
+		this.shared = shared;
+		this.executor = executor;
+	}
+
+	/**
+	 * translate the name of a shedding policy
+	 *
+	 * @param name "drop-newest", "drop-oldest" or "sample"
+	 * @return the shedding policy
+	 */
+	static int parsePolicy(String name) {
+		String n = name.trim().toLowerCase();
+		if (n.equals("drop-newest")) {
+			return SnmpGatewayEventQueue.DROP_NEWEST;
+		} else if (n.equals("drop-oldest")) {
+			return SnmpGatewayEventQueue.DROP_OLDEST;
+		} else if (n.equals("sample")) {
+			return SnmpGatewayEventQueue.SAMPLE;
+		}
+		throw new IllegalArgumentException("Unknown shedding policy: " + name);
+	}
+
+	/**
+	 * offer a notification to the queue without blocking; a notification
+	 * which is not queued is discarded
+	 *
+	 * @param e the task which decodes and processes the notification
+	 * @param sender the hash of the notification's sender
+	 * @return true if the notification was queued
+	 */
+	boolean offer(Task e, int sender) {
+		if (this.acquire() > this.capacity) {
+			switch (this.policy) {
+			case SnmpGatewayEventQueue.DROP_NEWEST:
+				this.release();
+				this.shedNewest.incrementAndGet();
+				e.discard();
+				return false;
+			case SnmpGatewayEventQueue.SAMPLE:
+				int stripe = (sender & 0x7fffffff) % SnmpGatewayEventQueue.SAMPLE_STRIPES;
+				if ((this.sampleCounters.incrementAndGet(stripe) % this.sampleRate) != 0) {
+					this.release();
+					this.shedSampled.incrementAndGet();
+					e.discard();
+					return false;
+				}
+				// make room for the sampled notification
+				if (!this.shedOldest()) {
+					e.discard();
+					return false;
+				}
+				break;
+			case SnmpGatewayEventQueue.DROP_OLDEST:
+			default:
+				if (!this.shedOldest()) {
+					e.discard();
+					return false;
+				}
+				break;
+			}
+		}
+		this.queue.add(e);
+		this.queued.incrementAndGet();
+		if (this.executor != null) {
+			this.schedule();
+		} else {
+			Thread t = this.consumer;
+			if (t != null) {
+				LockSupport.unpark(t);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * count a notification into the queue
+	 *
+	 * @return the depth against which the capacity is checked
+	 */
+	private int acquire() {
+		int d = this.depth.incrementAndGet();
+		return (this.shared != null) ? this.shared.incrementAndGet() : d;
+	}
+
+	/**
+	 * count a notification out of the queue
+	 */
+	private void release() {
+		this.depth.decrementAndGet();
+		if (this.shared != null) {
+			this.shared.decrementAndGet();
+		}
+	}
+
+	/**
+	 * drop the oldest queued notification to make room for another.  When
+	 * the capacity is shared this queue may have none to drop, and the
+	 * arriving notification is dropped instead.
+	 *
+	 * @return true if there is room for the arriving notification
+	 */
+	private boolean shedOldest() {
+		Task oldest = this.queue.poll();
+		if (oldest != null) {
+			this.release();
+			this.shedOldest.incrementAndGet();
+			oldest.discard();
+			return true;
+		}
+		if (this.shared == null) {
+			// the consumer has just taken the oldest
+			return true;
+		}
+		this.release();
+		this.shedNewest.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * submit the task draining the queue, unless it is already running
+	 */
+	private void schedule() {
+		if (this.scheduled.compareAndSet(false, true)) {
+			try {
+				this.executor.execute(this.drainer);
+			} catch (RejectedExecutionException ex) {
+				// stopping
+				this.scheduled.set(false);
+			}
+		}
+	}
+
+	/**
+	 * decode and process queued notifications until the queue is empty
+	 */
+	private void drain() {
+		for (;;) {
+			Task e;
+			while (this.running && (e = this.queue.poll()) != null) {
+				this.release();
+				this.process(e);
+			}
+			this.scheduled.set(false);
+			// a notification queued after the last poll found the task still scheduled
+			if (!this.running || this.queue.isEmpty() || !this.scheduled.compareAndSet(false, true)) {
+				return;
+			}
+		}
+	}
+
+	private void process(Task e) {
+		try {
+			e.run();
+		} catch (RuntimeException ex) {
+			this.sg.logWarn("Failed to process SNMP event notification from " +
+							e + ": " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * decode and process queued notifications until stopped
+	 */
+	public void run() {
+		this.consumer = Thread.currentThread();
+		while (this.running) {
+			Task e = this.queue.poll();
+			if (e == null) {
+				LockSupport.park(this);
+				continue;
+			}
+			this.release();
+			this.process(e);
+		}
+	}
+
+	/**
+	 * stop processing notifications; queued notifications are abandoned, not
+	 * discarded, so that those journaled are replayed at the next start
+	 */
+	void stop() {
+		this.running = false;
+		Thread t = this.consumer;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+	}
+
+	/**
+	 * get the number of notifications waiting in the queue
+	 * @return the queue depth
+	 */
+	int getDepth() {
+		return Math.max(0, this.depth.get());
+	}
+
+	/**
+	 * add the counters of this queue to a set of statistics
+	 *
+	 * @param stats the statistics to which the counters are added
+	 */
+	void addStatistics(HashMap<String, Long> stats) {
+		SnmpGatewayEventQueue.add(stats, "Queued",      this.queued.get());
+		SnmpGatewayEventQueue.add(stats, "ShedNewest",  this.shedNewest.get());
+		SnmpGatewayEventQueue.add(stats, "ShedOldest",  this.shedOldest.get());
+		SnmpGatewayEventQueue.add(stats, "ShedSampled", this.shedSampled.get());
+		SnmpGatewayEventQueue.add(stats, "Depth",       this.getDepth());
+	}
+
+	private static void add(HashMap<String, Long> stats, String name, long value) {
+		Long v = stats.get(name);
+		stats.put(name, Long.valueOf((v != null) ? v.longValue() + value : value));
+	}
+}
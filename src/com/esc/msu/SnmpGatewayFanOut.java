@@ -0,0 +1,313 @@
+package com.esc.msu;
+
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+
+/**
+ * comprises the same SNMP request sent concurrently to many SNMP Agents.
+ * <p>
+ * At most window requests are outstanding at any time; as each one completes
+ * the next pending request is sent from the session's transport thread, so no
+ * thread is held per target.  The SNMP4J target of each request is created
+ * only when the request is about to be sent, on the resolver executor, since
+ * resolving an address or discovering an SNMPv3 engine may block.  Responses
+ * are made available in the order in which they complete.
+ */
+public class SnmpGatewayFanOut implements ResponseListener {
+
+	/**
+	 * a single request of the fan-out
+	 */
+	static class Request {
+		final String target;
+		final SnmpGatewayCredentials cred;
+		final PDU pdu;
+		final AtomicBoolean done = new AtomicBoolean(false);
+		volatile Target snmpTarget;
+		long start;
+		long startNanos;
+
+		Request(SnmpGatewayCredentials cred, PDU pdu) {
+			this.target = cred.getTargetAddress();
+			this.cred = cred;
+			this.pdu = pdu;
+		}
+	}
+
+	private final SnmpGatewayHelper helper;
+	private final Snmp session;
+	private final Executor resolver;
+	private final String requestType;
+	private final Vector<String> requestVbs;
+	private final int window;
+	private final SnmpGatewayRttEstimator rtt;
+	private final SnmpGatewayMetrics metrics;
+	private final ConcurrentLinkedQueue<Request> pending = new ConcurrentLinkedQueue<Request>();
+	private final ConcurrentHashMap<Request, Boolean> outstanding = new ConcurrentHashMap<Request, Boolean>();
+	private final LinkedBlockingQueue<SnmpGatewayResponse> completed = new LinkedBlockingQueue<SnmpGatewayResponse>();
+	private final CountDownLatch remaining;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * construct a fan-out of the prepared requests
+	 *
+	 * @param helper the helper creating the SNMP4J target of each request
+	 * @param session the SNMP session on which the requests are sent
+	 * @param resolver the executor on which the SNMP4J targets are created
+	 * @param requestType the request type (GET)
+	 * @param requestVbs the set of requested variable bindings (varbinds)
+	 * @param requests the prepared request for each target SNMP Agent
+	 * @param window the maximum number of requests outstanding at any time
+	 * @param rtt the round-trip time estimator sampled as requests complete, or null
+	 * @param metrics the counters of the requests sent
+	 */
+	SnmpGatewayFanOut(SnmpGatewayHelper helper, Snmp session, Executor resolver,
+					  String requestType, Vector<String> requestVbs,
+					  Vector<Request> requests, int window, SnmpGatewayRttEstimator rtt,
+					  SnmpGatewayMetrics metrics) {
+		this.helper = helper;
+		this.session = session;
+		this.resolver = resolver;
+		this.requestType = requestType;
+		this.requestVbs = requestVbs;
+		this.window = (window > 0) ? window : 1;
+		this.rtt = rtt;
+		this.metrics = metrics;
+		this.pending.addAll(requests);
+		this.remaining = new CountDownLatch(requests.size());
+	}
+
+	/**
+	 * send the first window of requests
+	 */
+	void start() {
+		for (int i = 0; (i < this.window) && !this.pending.isEmpty(); i++) {
+			this.sendNext();
+		}
+	}
+
+	/**
+	 * take the next pending request and have its target created, completing
+	 * at once any request whose target cannot be created or that cannot be
+	 * sent and taking the next in its place, until a request is outstanding
+	 * or none are pending
+	 */
+	private void sendNext() {
+		Request r;
+		while (!this.cancelled && ((r = this.pending.poll()) != null)) {
+			// the duration of a request that cannot be sent; send() stamps it again
+			r.start = System.currentTimeMillis();
+			r.startNanos = System.nanoTime();
+			this.outstanding.put(r, Boolean.TRUE);
+			if (this.resolve(r)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * create the target of a request on the resolver executor, then send it
+	 *
+	 * @return true if the request was handed to the resolver
+	 */
+	private boolean resolve(final Request r) {
+		try {
+			this.resolver.execute(new Runnable() {
+				public void run() {
+					if (!SnmpGatewayFanOut.this.send(r)) {
+						SnmpGatewayFanOut.this.sendNext();
+					}
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			// the gateway is stopping
+			this.fail(r);
+			return false;
+		}
+	}
+
+	/**
+	 * create the target of a request and send it
+	 *
+	 * @return true if the request was sent; false if it was completed
+	 *         without a response
+	 */
+	private boolean send(Request r) {
+		if (this.cancelled) {
+			// cancelled while its target was being created
+			this.drop(r);
+			return false;
+		}
+		try {
+			r.snmpTarget = this.helper.createTarget(r.cred);
+			// time the request itself, not the resolver queue, address resolution
+			// or engine discovery, so that the round-trip time sample is the agent's
+			r.start = System.currentTimeMillis();
+			r.startNanos = System.nanoTime();
+			this.session.send(r.pdu, r.snmpTarget, r, this);
+			return true;
+		} catch (IOException e) {
+			// unresolvable address, failed SNMPv3 engine discovery or a failed send
+			this.fail(r);
+			return false;
+		}
+	}
+
+	/**
+	 * complete a request when its response (or timeout) arrives and send the
+	 * next pending request in its place
+	 */
+	public void onResponse(ResponseEvent e) {
+		// always cancel an asynchronous request once answered, otherwise it is retried
+		((Snmp )e.getSource()).cancel(e.getRequest(), this);
+		Request r = (Request )e.getUserObject();
+		if ((this.rtt != null) && !r.done.get()) {
+			this.rtt.sample(r.snmpTarget, System.currentTimeMillis() - r.start, e.getResponse() != null);
+		}
+		this.complete(r, e.getResponse());
+		this.sendNext();
+	}
+
+	private void complete(Request r, PDU response) {
+		if (!r.done.compareAndSet(false, true)) {
+			return;
+		}
+		this.metrics.request(this.requestType, r.target, response, System.nanoTime() - r.startNanos);
+		this.addResponse(r, response);
+	}
+
+	/**
+	 * complete a request that could not be sent
+	 */
+	private void fail(Request r) {
+		if (!r.done.compareAndSet(false, true)) {
+			return;
+		}
+		this.metrics.requestFailed(this.requestType);
+		this.addResponse(r, null);
+	}
+
+	private void addResponse(Request r, PDU response) {
+		this.outstanding.remove(r);
+		long nanos = System.nanoTime() - r.startNanos;
+		long duration = System.currentTimeMillis() - r.start;
+		SnmpGatewayResponse sgr = new SnmpGatewayResponse(this.requestType, r.start, duration,
+														  r.target, this.requestVbs, response);
+		sgr.setDurationNanos(nanos);
+		this.completed.add(sgr);
+		this.remaining.countDown();
+	}
+
+	/**
+	 * cancel the fan-out.  Pending requests are not sent, and outstanding
+	 * requests are cancelled; their responses, if any arrive, are discarded.
+	 * Responses already completed can still be retrieved.
+	 *
+	 * @return the number of requests cancelled
+	 */
+	public int cancel() {
+		int n = 0;
+
+		this.cancelled = true;
+		Request r;
+		while ((r = this.pending.poll()) != null) {
+			if (this.drop(r)) {
+				n++;
+			}
+		}
+		for (Request o : this.outstanding.keySet()) {
+			if (this.drop(o)) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * complete a request without a response, cancelling it if it was sent
+	 *
+	 * @return true if the request had not already completed
+	 */
+	private boolean drop(Request r) {
+		if (!r.done.compareAndSet(false, true)) {
+			return false;
+		}
+		this.outstanding.remove(r);
+		if (r.snmpTarget != null) {
+			this.session.cancel(r.pdu, this);
+		}
+		this.remaining.countDown();
+		return true;
+	}
+
+	/**
+	 * determine whether the fan-out was cancelled
+	 * @return true if the fan-out was cancelled
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * determine whether every request of the fan-out has completed
+	 * @return true if every request has completed
+	 */
+	public boolean isDone() {
+		return this.remaining.getCount() == 0;
+	}
+
+	/**
+	 * get the number of requests that have not yet completed
+	 * @return the number of requests that have not yet completed
+	 */
+	public long getRemaining() {
+		return this.remaining.getCount();
+	}
+
+	/**
+	 * wait at most the given number of milliseconds for the next response
+	 *
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return the next completed SNMP Response, or null if none completed in time
+	 */
+	public SnmpGatewayResponse nextResponse(long timeout) throws InterruptedException {
+		return this.completed.poll(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * get the responses that have completed and have not yet been retrieved
+	 * @return the completed SNMP Responses in completion order
+	 */
+	public Vector<SnmpGatewayResponse> drainResponses() {
+		Vector<SnmpGatewayResponse> v = new Vector<SnmpGatewayResponse>();
+		this.completed.drainTo(v);
+		return v;
+	}
+
+	/**
+	 * wait at most the given number of milliseconds for every request to
+	 * complete
+	 *
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return the completed SNMP Responses not yet retrieved, in completion order
+	 */
+	public Vector<SnmpGatewayResponse> awaitResponses(long timeout) throws InterruptedException {
+		this.remaining.await(timeout, TimeUnit.MILLISECONDS);
+		return this.drainResponses();
+	}
+}
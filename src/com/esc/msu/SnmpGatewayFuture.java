@@ -0,0 +1,261 @@
+package com.esc.msu;
+
+import java.util.Vector;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+
+/**
+ * handle for an asynchronous SNMP gateway request.
+ * <p>
+ * The request is sent on the gateway's shared SNMP request session and
+ * completes on the session's transport thread; no thread is held while the
+ * request is outstanding.  The page may poll isDone() or join with get().
+ * When a CFC path is supplied the completed SnmpGatewayResponse is also
+ * delivered to that CFC as a CFEvent.
+ */
+public class SnmpGatewayFuture implements Future<SnmpGatewayResponse>, ResponseListener {
+
+	private final SnmpGateway gateway;
+	private final String requestType;
+	private final String target;
+	private final Vector<String> requestVbs;
+	private final String cfcPath;
+	private final String cfcMethod;
+	private final CountDownLatch done = new CountDownLatch(1);
+	private final AtomicBoolean finished = new AtomicBoolean(false);
+	private Snmp session;
+	private PDU request;
+	private Target snmpTarget;
+	private long sent;
+	private SnmpGatewayCoalescer coalescer;
+	private SnmpGatewayCoalescer.Caller caller;
+	private long requestStart;
+	private long requestStartNanos;
+	private volatile SnmpGatewayResponse response;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * construct the handle for an asynchronous SNMP gateway request
+	 *
+	 * @param gateway the gateway delivering CFEvents for the response
+	 * @param requestType the request type (GET or GETNEXT)
+	 * @param target the target SNMP Agent to which the request is sent
+	 * @param requestVbs the set of requested variable bindings (varbinds)
+	 * @param cfcPath the CFC to receive the response as a CFEvent, or null
+	 * @param cfcMethod the CFC function to receive the response
+	 */
+	SnmpGatewayFuture(SnmpGateway gateway, String requestType, String target,
+					  Vector<String> requestVbs, String cfcPath, String cfcMethod) {
+		this.gateway = gateway;
+		this.requestType = requestType;
+		this.target = target;
+		this.requestVbs = requestVbs;
+		this.cfcPath = cfcPath;
+		this.cfcMethod = cfcMethod;
+	}
+
+	/**
+	 * record the session and PDU of the request just before it is sent
+	 *
+	 * @param session the SNMP session on which the request is sent
+	 * @param request the request PDU
+	 */
+	void sending(Snmp session, PDU request) {
+		this.session = session;
+		this.request = request;
+		this.requestStart = System.currentTimeMillis();
+		this.requestStartNanos = System.nanoTime();
+	}
+
+	/**
+	 * record the session, PDU and target of the request just before it is
+	 * sent, so that its round-trip time is sampled when it completes
+	 *
+	 * @param session the SNMP session on which the request is sent
+	 * @param request the request PDU
+	 * @param target the SNMP4J target to which the request is sent
+	 */
+	void sending(Snmp session, PDU request, Target target) {
+		this.sending(session, request);
+		this.resending(target);
+	}
+
+	/**
+	 * record the target of a merged Get-Request just before the caller's own
+	 * request is re-sent on its own, so that the round-trip time of that
+	 * request, not the time since the caller submitted it, is sampled when it
+	 * completes
+	 *
+	 * @param target the SNMP4J target to which the request is sent
+	 */
+	void resending(Target target) {
+		this.snmpTarget = target;
+		this.sent = System.currentTimeMillis();
+	}
+
+	/**
+	 * record the coalescer into which the request is merged, just before it
+	 * is submitted, so that cancelling the request withdraws it from the merge
+	 *
+	 * @param coalescer the coalescer holding the request
+	 * @param caller the coalescer's record of the request
+	 */
+	void coalescing(SnmpGatewayCoalescer coalescer, SnmpGatewayCoalescer.Caller caller) {
+		this.coalescer = coalescer;
+		this.caller = caller;
+		this.sending(null, null);
+	}
+
+	/**
+	 * complete the request when its response (or timeout) arrives
+	 */
+	public void onResponse(ResponseEvent e) {
+		// always cancel an asynchronous request once answered, otherwise it is retried
+		((Snmp )e.getSource()).cancel(e.getRequest(), this);
+		if ((this.snmpTarget != null) && (this.done.getCount() > 0)) {
+			this.gateway.requestCompleted(this.snmpTarget, System.currentTimeMillis() - this.sent,
+										  e.getResponse());
+		}
+		this.complete(e.getResponse());
+	}
+
+	/**
+	 * complete the request with the supplied response
+	 *
+	 * @param pdu the response PDU, or null when no response was received
+	 */
+	void complete(PDU pdu) {
+		this.complete(pdu, false);
+	}
+
+	/**
+	 * complete without a response a request that could not be sent, counting
+	 * it as failed rather than as timed out
+	 */
+	void fail() {
+		this.complete(null, true);
+	}
+
+	private void complete(PDU pdu, boolean failed) {
+		if (!this.finished.compareAndSet(false, true)) {
+			return;
+		}
+		long nanos = System.nanoTime() - this.requestStartNanos;
+		long duration = System.currentTimeMillis() - this.requestStart;
+		if (failed) {
+			this.gateway.getMetricsCounters().requestFailed(this.requestType);
+		} else {
+			this.gateway.getMetricsCounters().request(this.requestType, this.target, pdu, nanos);
+		}
+		SnmpGatewayResponse r = new SnmpGatewayResponse(this.requestType, this.requestStart, duration,
+														this.target, this.requestVbs, pdu);
+		r.setDurationNanos(nanos);
+		this.response = r;
+		this.done.countDown();
+
+		if (this.cfcPath != null && this.cfcPath.trim().length() > 0) {
+			ExecutorService exec = this.gateway.getResponseExecutor();
+			if (exec == null) {
+				this.gateway.inboundResponse(this.response, this.cfcPath, this.cfcMethod);
+			} else {
+				try {
+					exec.execute(new Runnable() {
+						public void run() {
+							SnmpGatewayFuture.this.gateway.inboundResponse(SnmpGatewayFuture.this.response,
+																		   SnmpGatewayFuture.this.cfcPath,
+																		   SnmpGatewayFuture.this.cfcMethod);
+						}
+					});
+				} catch (RejectedExecutionException ex) {
+					// the gateway is stopping
+				}
+			}
+		}
+	}
+
+	/**
+	 * cancel the request.  Its response, if any arrives, is discarded.  A
+	 * Get-Request merged with other callers' requests is withdrawn from the
+	 * merge; the merged request itself is cancelled once every caller merged
+	 * into it has cancelled.
+	 *
+	 * @param mayInterruptIfRunning ignored- there is no thread to interrupt
+	 * @return true if the request was cancelled before it completed
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (!this.finished.compareAndSet(false, true)) {
+			return false;
+		}
+		this.cancelled = true;
+		if (this.coalescer != null) {
+			this.coalescer.cancel(this.caller);
+		} else if (this.session != null) {
+			this.session.cancel(this.request, this);
+		}
+		this.done.countDown();
+		return true;
+	}
+
+	/**
+	 * wait for the request to complete
+	 *
+	 * @return the SNMP Response corresponding to the request
+	 */
+	public SnmpGatewayResponse get() throws InterruptedException {
+		this.done.await();
+		return this.getResponse();
+	}
+
+	/**
+	 * wait at most the given time for the request to complete
+	 *
+	 * @return the SNMP Response corresponding to the request
+	 */
+	public SnmpGatewayResponse get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		if (!this.done.await(timeout, unit)) {
+			throw new TimeoutException(this.requestType + " to " + this.target + " has not completed");
+		}
+		return this.getResponse();
+	}
+
+	/**
+	 * wait at most the given number of milliseconds for the request to complete
+	 *
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return the SNMP Response corresponding to the request, or null if the
+	 *         request has not completed in time
+	 */
+	public SnmpGatewayResponse join(long timeout) throws InterruptedException {
+		if (!this.done.await(timeout, TimeUnit.MILLISECONDS)) {
+			return null;
+		}
+		return this.getResponse();
+	}
+
+	private SnmpGatewayResponse getResponse() {
+		if (this.cancelled) {
+			throw new CancellationException(this.requestType + " to " + this.target + " was cancelled");
+		}
+		return this.response;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	public boolean isDone() {
+		return this.done.getCount() == 0;
+	}
+}
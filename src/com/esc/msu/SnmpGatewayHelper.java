@@ -1,10 +1,18 @@
 package com.esc.msu;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Vector;
 
 import org.snmp4j.PDU;
-import org.snmp4j.tools.console.SnmpRequest;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.UserTarget;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
 
 //import coldfusion.eventgateway.Gateway;
 import coldfusion.eventgateway.GatewayHelper;
@@ -44,8 +52,10 @@ public class SnmpGatewayHelper implements GatewayHelper {
 	}
 	
 	/**
-	 * Perform the requested SNMP Request on behalf of the gateway
+	 * Perform the requested SNMP Request on behalf of the gateway using
+	 * the gateway's shared SNMP request session
 	 * 
+	 * @param pduType the SNMP4J request PDU type, either PDU.GET or PDU.GETNEXT
 	 * @param type the request type, either "GET" or "GETNEXT"
 	 * @param cred the set of SNMP credentials for the target SNMP Agent
 	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve
@@ -53,27 +63,140 @@ public class SnmpGatewayHelper implements GatewayHelper {
 	 * 
 	 * @throws IOException
 	 */
-	private SnmpGatewayResponse snmpRequest(String type,
+	private SnmpGatewayResponse snmpRequest(int pduType, String type,
 										    SnmpGatewayCredentials cred, 
 										    Vector<String> vbs) throws IOException {
 
-		Vector<String> args = extractArgs(type, cred, vbs);
-		
-		SnmpRequest sr = new SnmpRequest(args.toArray(new String[args.size()]));
+		return this.snmpRequest(type, cred, vbs, this.createRequestPDU(pduType, cred, vbs));
+	}
+	
+	/**
+	 * Send a prepared SNMP Request PDU on behalf of the gateway using
+	 * the gateway's shared SNMP request session
+	 * 
+	 * @param type the request type, for example "GET" or "GETBULK"
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve
+	 * @param request the request PDU to send
+	 * @return the SNMP Response corresponding to the provided Request
+	 * 
+	 * @throws IOException
+	 */
+	private SnmpGatewayResponse snmpRequest(String type,
+										    SnmpGatewayCredentials cred, 
+										    Vector<String> vbs,
+										    PDU request) throws IOException {
+
+		Snmp session = this.getRequestSession();
+		Target target = this.createTarget(cred);
 		
 		long start = System.currentTimeMillis();
-		PDU response = sr.send();
-		long duration = System.currentTimeMillis() - start;
+		long startNanos = System.nanoTime();
+		PDU response = this.sendRequest(session, target, type, cred, request);
+		return this.createResponse(type, cred, vbs, start, startNanos, response);
+	}
+	
+	/**
+	 * Send a single request PDU and wait for its response, counting it in the
+	 * gateway's metrics and sampling its round-trip time
+	 * 
+	 * @param session the SNMP session on which the request is sent
+	 * @param target the SNMP4J target for the target SNMP Agent
+	 * @param type the request type under which the request is counted
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param request the request PDU to send
+	 * @return the response PDU, or null if no response was received
+	 * 
+	 * @throws IOException
+	 */
+	private PDU sendRequest(Snmp session, Target target, String type,
+							SnmpGatewayCredentials cred, PDU request) throws IOException {
+		
+		long start = System.nanoTime();
+		ResponseEvent re;
+		try {
+			re = session.send(request, target);
+		} catch (IOException e) {
+			this.gateway.getMetricsCounters().requestFailed(type);
+			throw e;
+		}
+		long nanos = System.nanoTime() - start;
+		PDU response = re.getResponse();
+		this.gateway.getMetricsCounters().request(type, cred.getTargetAddress(), response, nanos);
+		
+		this.gateway.requestCompleted(target, nanos / 1000000L, response);
+		return response;
+	}
+	
+	/**
+	 * Build the SNMP Response of a completed request and log its synopsis
+	 * 
+	 * @param type the request type, for example "GET" or "GETBULK"
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param vbs the set of requested MIB variable bindings (varbinds)
+	 * @param start the time in milliseconds the request was started
+	 * @param startNanos the System.nanoTime() at which the request was started
+	 * @param response the response PDU, or null if no response was received
+	 * @return the SNMP Response
+	 */
+	private SnmpGatewayResponse createResponse(String type, SnmpGatewayCredentials cred,
+											   Vector<String> vbs, long start, long startNanos,
+											   PDU response) {
 		
-		SnmpGatewayResponse sgr = new SnmpGatewayResponse(type, start, duration,
+		SnmpGatewayResponse sgr = new SnmpGatewayResponse(type, start, System.currentTimeMillis() - start,
 			                   cred.getTargetAddress(),
 			                   vbs, response);
+		sgr.setDurationNanos(System.nanoTime() - startNanos);
 		if (isLogging) {
-		    this.logger.info("response is: \n" + sgr.getSynopsis());
+		    this.logger.debug("response is: \n" + sgr.getSynopsis());
 		}
 		return sgr;
 	}
 	
+	/**
+	 * Create the SNMP4J target for the target SNMP Agent.  For SNMPv3
+	 * credentials the agent's authoritative engine ID and the user's localized
+	 * keys are taken from the gateway's engine cache, so only the first
+	 * request to an agent pays for engine discovery and key localization.
+	 * 
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @return the SNMP4J target
+	 * 
+	 * @throws IOException
+	 */
+	Target createTarget(SnmpGatewayCredentials cred) throws IOException {
+		Target target = cred.createTarget(this.gateway.getRequestTimeout(),
+										  this.gateway.getRequestRetries());
+		
+		SnmpGatewayRttEstimator rtt = this.gateway.getRttEstimator();
+		if (rtt != null) {
+			rtt.adjust(target, this.gateway.getRequestRetries());
+		}
+		if (cred.getSnmpVersion() == SnmpGatewayCredentials.SNMP_VERSION_3) {
+			SnmpGatewayEngineCache engines = this.gateway.getEngineCache();
+			if (engines == null) {
+				throw new IOException(this.gateway.getGatewayID() + " SNMP request session is not running");
+			}
+			engines.prepare(cred, (UserTarget )target);
+		}
+		return target;
+	}
+	
+	/**
+	 * get the gateway's shared SNMP request session
+	 * 
+	 * @return the shared SNMP request session
+	 * 
+	 * @throws IOException if the gateway has not been started
+	 */
+	private Snmp getRequestSession() throws IOException {
+		Snmp session = this.gateway.getRequestSession();
+		if (session == null) {
+			throw new IOException(this.gateway.getGatewayID() + " SNMP request session is not running");
+		}
+		return session;
+	}
+	
 	/**
 	 * invoke an SNMP Get-Request
 	 * 
@@ -86,7 +209,65 @@ public class SnmpGatewayHelper implements GatewayHelper {
 	public SnmpGatewayResponse get(SnmpGatewayCredentials cred,
 											  Vector<String> vbs) throws IOException {
 
-		return this.snmpRequest("GET", cred, vbs);
+		SnmpGatewayCache cache = this.gateway.getResponseCache();
+		if (cache != null) {
+			PDU cached = cache.get(cred, vbs);
+			if (cached != null) {
+				this.gateway.getMetricsCounters().cacheHits.increment();
+				return new SnmpGatewayResponse("GET", System.currentTimeMillis(), 0,
+											   cred.getTargetAddress(), vbs, cached, true);
+			}
+		}
+		
+		SnmpGatewayResponse sgr;
+		if (this.gateway.getCoalescer() != null) {
+			sgr = this.coalescedRequest(cred, vbs);
+		} else {
+			sgr = this.snmpRequest(PDU.GET, "GET", cred, vbs);
+		}
+		if (cache != null) {
+			cache.put(cred, vbs, sgr.getResponsePDU());
+		}
+		return sgr;
+	}
+	
+	/**
+	 * Perform an SNMP Get-Request through the gateway's request coalescer,
+	 * waiting for the merged request's response
+	 * 
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve
+	 * @return the SNMP Response corresponding to the provided Request
+	 * 
+	 * @throws IOException
+	 */
+	private SnmpGatewayResponse coalescedRequest(SnmpGatewayCredentials cred,
+												 Vector<String> vbs) throws IOException {
+		
+		// a merged request that fails is re-sent per caller, so allow for two
+		// complete retry chains beyond the coalescing window
+		long bound = this.gateway.getCoalesceWindow() +
+					 2L * this.gateway.getRequestTimeout() * (this.gateway.getRequestRetries() + 1);
+		
+		long start = System.currentTimeMillis();
+		SnmpGatewayFuture f = this.snmpRequestAsync(PDU.GET, "GET", cred, vbs, null, null);
+		SnmpGatewayResponse sgr;
+		try {
+			sgr = f.join(bound);
+		} catch (InterruptedException e) {
+			f.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("GET to " + cred.getTargetAddress() + " was interrupted");
+		}
+		if (sgr == null) {
+			f.cancel(true);
+			sgr = new SnmpGatewayResponse("GET", start, System.currentTimeMillis() - start,
+										  cred.getTargetAddress(), vbs, null);
+		}
+		if (isLogging) {
+		    this.logger.debug("response is: \n" + sgr.getSynopsis());
+		}
+		return sgr;
 	}
 	
 	/**
@@ -101,44 +282,399 @@ public class SnmpGatewayHelper implements GatewayHelper {
 	public SnmpGatewayResponse getNext(SnmpGatewayCredentials cred,
 												Vector<String> vbs) throws IOException {
 		
-		return this.snmpRequest("GETNEXT", cred, vbs);
+		return this.snmpRequest(PDU.GETNEXT, "GETNEXT", cred, vbs);
+	}
+	
+
+	/**
+	 * invoke an SNMP GetBulk-Request.
+	 * <p>
+	 * The first nonRepeaters varbinds are retrieved once; each of the remaining
+	 * varbinds is retrieved up to maxRepetitions times.  SNMP v1 agents do not
+	 * support GetBulk, so for SNMP_VERSION_1 credentials the request is carried
+	 * out as a sequence of GetNext-Requests returning the same set of varbinds.
+	 * 
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param nonRepeaters the number of leading varbinds retrieved only once
+	 * @param maxRepetitions the maximum number of successors retrieved for
+	 *        each remaining varbind
+	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve 
+	 * @return the SNMP Response containing every retrieved varbind
+	 * 
+	 * @throws IOException
+	 */
+	public SnmpGatewayResponse getBulk(SnmpGatewayCredentials cred,
+									   int nonRepeaters, int maxRepetitions,
+									   Vector<String> vbs) throws IOException {
+		
+		nonRepeaters = Math.max(0, Math.min(nonRepeaters, vbs.size()));
+		maxRepetitions = Math.max(0, maxRepetitions);
+		
+		if (cred.getSnmpVersion() == SnmpGatewayCredentials.SNMP_VERSION_1) {
+			return this.getBulkByGetNext(cred, nonRepeaters, maxRepetitions, vbs);
+		}
+		
+		PDU request = this.createRequestPDU(PDU.GETBULK, cred, vbs);
+		request.setNonRepeaters(nonRepeaters);
+		request.setMaxRepetitions(maxRepetitions);
+		return this.snmpRequest("GETBULK", cred, vbs, request);
+	}
+	
+	/**
+	 * carry out a GetBulk-Request for an SNMP v1 agent as a sequence of
+	 * GetNext-Requests, each counted and timed as a GETBULK request
+	 * 
+	 * @param cred the set of SNMP v1 credentials for the target SNMP Agent
+	 * @param nonRepeaters the number of leading varbinds retrieved only once
+	 * @param maxRepetitions the maximum number of successors retrieved for
+	 *        each remaining varbind
+	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve 
+	 * @return the SNMP Response containing every retrieved varbind
+	 * 
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	private SnmpGatewayResponse getBulkByGetNext(SnmpGatewayCredentials cred,
+			 									 int nonRepeaters, int maxRepetitions,
+			 									 Vector<String> vbs) throws IOException {
+		
+		Snmp session = this.getRequestSession();
+		Target target = this.createTarget(cred);
+		
+		long start = System.currentTimeMillis();
+		long startNanos = System.nanoTime();
+		PDU response = this.sendRequest(session, target, "GETBULK", cred, this.createRequestPDU(PDU.GETNEXT, cred, vbs));
+		
+		if ((response != null) && (response.getErrorStatus() == PDU.noError)) {
+			Vector<VariableBinding> first = response.getVariableBindings();
+			Vector<VariableBinding> repeaters = new Vector<VariableBinding>(first.subList(nonRepeaters, first.size()));
+			PDU bulk = (PDU )response.clone();
+			
+			if (maxRepetitions == 0) {
+				bulk.getVariableBindings().setSize(nonRepeaters);
+			}
+			for (int i = 1; (i < maxRepetitions) && !repeaters.isEmpty(); i++) {
+				PDU next = cred.createPDU(PDU.GETNEXT);
+				for (VariableBinding vb : repeaters) {
+					next.add(new VariableBinding(vb.getOid()));
+				}
+				PDU r = this.sendRequest(session, target, "GETBULK", cred, next);
+				if ((r == null) || (r.getErrorStatus() != PDU.noError)) {
+					// noSuchName marks the end of the MIB view for v1 agents
+					break;
+				}
+				repeaters = r.getVariableBindings();
+				bulk.addAll(repeaters.toArray(new VariableBinding[repeaters.size()]));
+			}
+			response = bulk;
+		}
+		return this.createResponse("GETBULK", cred, vbs, start, startNanos, response);
+	}
+	
+	/**
+	 * walk an SNMP Agent MIB subtree, retrieving it a page at a time
+	 * 
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param rootOid the OID of the root of the subtree to walk
+	 * @return the walk, from which pages of varbinds are retrieved
+	 * 
+	 * @throws IOException
+	 */
+	public SnmpGatewayWalk walk(SnmpGatewayCredentials cred, String rootOid) throws IOException {
+		
+		return this.walk(cred, rootOid, SnmpGatewayWalk.DEFAULT_PAGE_SIZE);
+	}
+	
+	/**
+	 * walk an SNMP Agent MIB subtree, retrieving it a page at a time
+	 * 
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param rootOid the OID of the root of the subtree to walk
+	 * @param pageSize the maximum number of varbinds returned per page
+	 * @return the walk, from which pages of varbinds are retrieved
+	 * 
+	 * @throws IOException
+	 */
+	public SnmpGatewayWalk walk(SnmpGatewayCredentials cred, String rootOid, int pageSize) throws IOException {
+		
+		Target target = this.createTarget(cred);
+		return new SnmpGatewayWalk(this.getRequestSession(), target, cred, rootOid, pageSize,
+								   this.gateway);
+	}
+	
+	/**
+	 * invoke the same SNMP Get-Request concurrently on many target SNMP Agents
+	 * 
+	 * @param creds the set of SNMP credentials for each target SNMP Agent
+	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve from each
+	 * @return the fan-out, from which responses are retrieved as they complete
+	 * 
+	 * @throws IOException
+	 */
+	public SnmpGatewayFanOut getFanOut(Collection<SnmpGatewayCredentials> creds,
+									   Vector<String> vbs) throws IOException {
+		
+		return this.getFanOut(creds, vbs, this.gateway.getFanOutWindow());
+	}
+	
+	/**
+	 * invoke the same SNMP Get-Request concurrently on many target SNMP Agents
+	 * 
+	 * @param creds the set of SNMP credentials for each target SNMP Agent
+	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve from each
+	 * @param window the maximum number of requests outstanding at any time
+	 * @return the fan-out, from which responses are retrieved as they complete
+	 * 
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public SnmpGatewayFanOut getFanOut(Collection<SnmpGatewayCredentials> creds,
+									   Vector<String> vbs, int window) throws IOException {
+		
+		Snmp session = this.getRequestSession();
+		Vector<SnmpGatewayFanOut.Request> requests = new Vector<SnmpGatewayFanOut.Request>(creds.size());
+		
+		for (SnmpGatewayCredentials cred : creds) {
+			requests.add(new SnmpGatewayFanOut.Request(cred, this.createRequestPDU(PDU.GET, cred, vbs)));
+		}
+		
+		SnmpGatewayFanOut f = new SnmpGatewayFanOut(this, session, this.gateway.getResolverExecutor(),
+													"GET", (Vector<String> )vbs.clone(),
+													requests, window, this.gateway.getRttEstimator(),
+													this.gateway.getMetricsCounters());
+		f.start();
+		return f;
+	}
+	
+	/**
+	 * invoke an SNMP Get-Request without waiting for its response
+	 * 
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve 
+	 * @return the handle for the outstanding request
+	 * 
+	 * @throws IOException
+	 */
+	public SnmpGatewayFuture getAsync(SnmpGatewayCredentials cred,
+									  Vector<String> vbs) throws IOException {
+
+		return this.snmpRequestAsync(PDU.GET, "GET", cred, vbs, null, null);
+	}
+	
+	/**
+	 * invoke an SNMP Get-Request without waiting for its response, and
+	 * deliver the response to a CFC as a CFEvent
+	 * 
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve 
+	 * @param cfcPath the CFC to receive the response
+	 * @param cfcMethod the CFC function to receive the response
+	 * @return the handle for the outstanding request
+	 * 
+	 * @throws IOException
+	 */
+	public SnmpGatewayFuture getAsync(SnmpGatewayCredentials cred,
+									  Vector<String> vbs,
+									  String cfcPath, String cfcMethod) throws IOException {
+
+		return this.snmpRequestAsync(PDU.GET, "GET", cred, vbs, cfcPath, cfcMethod);
+	}
+	
+	/**
+	 * invoke an SNMP GetNext-Request without waiting for its response
+	 * 
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve 
+	 * @return the handle for the outstanding request
+	 * 
+	 * @throws IOException
+	 */
+	public SnmpGatewayFuture getNextAsync(SnmpGatewayCredentials cred,
+										  Vector<String> vbs) throws IOException {
+
+		return this.snmpRequestAsync(PDU.GETNEXT, "GETNEXT", cred, vbs, null, null);
 	}
 	
+	/**
+	 * invoke an SNMP GetNext-Request without waiting for its response, and
+	 * deliver the response to a CFC as a CFEvent
+	 * 
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve 
+	 * @param cfcPath the CFC to receive the response
+	 * @param cfcMethod the CFC function to receive the response
+	 * @return the handle for the outstanding request
+	 * 
+	 * @throws IOException
+	 */
+	public SnmpGatewayFuture getNextAsync(SnmpGatewayCredentials cred,
+										  Vector<String> vbs,
+										  String cfcPath, String cfcMethod) throws IOException {
 
+		return this.snmpRequestAsync(PDU.GETNEXT, "GETNEXT", cred, vbs, cfcPath, cfcMethod);
+	}
+	
 	/**
-	 * Extract the set of calling arguments and organize for use by the
-	 * org.snmp4j.tools.console.SnmpRequest class
+	 * Send the requested SNMP Request on behalf of the gateway without
+	 * waiting for its response
+	 * 
+	 * @param pduType the SNMP4J request PDU type, either PDU.GET or PDU.GETNEXT
+	 * @param type the request type, either "GET" or "GETNEXT"
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve
+	 * @param cfcPath the CFC to receive the response as a CFEvent, or null
+	 * @param cfcMethod the CFC function to receive the response
+	 * @return the handle for the outstanding request
+	 * 
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	private SnmpGatewayFuture snmpRequestAsync(int pduType, String type,
+			 								   SnmpGatewayCredentials cred,
+			 								   Vector<String> vbs,
+			 								   String cfcPath, String cfcMethod) throws IOException {
+		
+		Snmp session = this.getRequestSession();
+		PDU request = this.createRequestPDU(pduType, cred, vbs);
+		Target target = this.createTarget(cred);
+		
+		SnmpGatewayFuture f = new SnmpGatewayFuture(this.gateway, type, cred.getTargetAddress(),
+													(Vector<String> )vbs.clone(), cfcPath, cfcMethod);
+		SnmpGatewayCoalescer coalescer = this.gateway.getCoalescer();
+		if ((coalescer != null) && (pduType == PDU.GET)) {
+			coalescer.submit(cred, target, request, f);
+		} else {
+			f.sending(session, request, target);
+			try {
+				session.send(request, target, null, f);
+			} catch (IOException e) {
+				this.gateway.getMetricsCounters().requestFailed(type);
+				throw e;
+			}
+		}
+		return f;
+	}
+	
+	/**
+	 * Build the request PDU for the target SNMP Agent
 	 *  
-	 * @param pdu the type of SNMP PDU (GET or GETNEXT)
+	 * @param pduType the SNMP4J request PDU type (PDU.GET or PDU.GETNEXT)
 	 * @param cred the set of SNMP credentials for the target SNMP Agent
 	 * @param vbs the set of MIB variable bindings (varbinds) to retrieve
-	 * @return an ArrayList<String> containing the set of calling arguments
-	 *         to pass to SnmpRequest
+	 * @return the request PDU containing a null varbind for each requested OID
 	 */
-	private Vector<String> extractArgs(String pdu, SnmpGatewayCredentials cred, 	
+	private PDU createRequestPDU(int pduType, SnmpGatewayCredentials cred, 	
 										   Vector<String> vbs) {
-		Vector<String> args = new Vector<String>();
-		
-		// turn off log4j output
-		args.add("-d");		
-		args.add("OFF");
-		// identify the Request PDU type (GET or GETNEXT)		
-		args.add("-p");
-		args.add(pdu);
-		// identify the SNMP version (v1 or v2c)
-		args.add("-v");
-		args.add(cred.getSnmpVersionArg());
-		// identify the community string
-		args.add("-c");
-		args.add(cred.getTargetCommunity());
-		// identify the target SNMP Agent
-		args.add(cred.getTargetAddress() + cred.getTargetPortArg());
-		// specify the set of requested varbinds
-		args.addAll(vbs);
-		
-		return(args);
+		PDU pdu = cred.createPDU(pduType);
+		
+		for (String vb : vbs) {
+			pdu.add(new VariableBinding(new OID(vb)));
+		}
+		return pdu;
 	}
 
+	/**
+	 * convenience method to make a set of SNMPv3 Credentials
+	 * 
+	 * @param target the IP Address of the target SNMP Agent
+	 * @param securityName the SNMPv3 user to use in requests made on the
+	 *        target SNMP Agent
+	 * @param authProtocol the authentication protocol- "MD5", "SHA" or "" for none
+	 * @param authPassphrase the authentication passphrase
+	 * @param privProtocol the privacy protocol- "DES", "3DES", "AES128",
+	 *        "AES192", "AES256" or "" for none
+	 * @param privPassphrase the privacy passphrase
+	 * @return an instance of SnmpGatewayCredentials for use with the supplied
+	 *        target SNMP Agent.
+	 */
+	public SnmpGatewayCredentials createV3Credentials(String target, String securityName,
+													  String authProtocol, String authPassphrase,
+													  String privProtocol, String privPassphrase) {
+		return new SnmpGatewayCredentials(target, securityName,
+										  authProtocol, authPassphrase,
+										  privProtocol, privPassphrase);
+	}
+	
+	/**
+	 * get the number of varbinds held in the gateway's response cache
+	 * 
+	 * @return the number of cached varbinds, or 0 if response caching is disabled
+	 */
+	public int getCacheSize() {
+		SnmpGatewayCache cache = this.gateway.getResponseCache();
+		return (cache != null) ? cache.size() : 0;
+	}
+	
+	/**
+	 * discard every varbind held in the gateway's response cache
+	 */
+	public void clearCache() {
+		SnmpGatewayCache cache = this.gateway.getResponseCache();
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * get the round-trip time estimate for a target SNMP Agent as a struct
+	 * with the entries SmoothedRtt, RttVariance, Timeout (all in milliseconds)
+	 * and ConsecutiveTimeouts
+	 * 
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @return the round-trip time estimate, or an empty struct if adaptive
+	 *         timeouts are disabled
+	 * 
+	 * @throws IOException
+	 */
+	public HashMap<String, Long> getRoundTripTime(SnmpGatewayCredentials cred) throws IOException {
+		SnmpGatewayRttEstimator rtt = this.gateway.getRttEstimator();
+		if (rtt == null) {
+			return new HashMap<String, Long>();
+		}
+		return rtt.getEstimate(cred.createTarget(0, 0).getAddress());
+	}
+	
+	/**
+	 * get the ingress counters of the SNMP Gateway event listener as a struct
+	 * with the entries Queued, ShedNewest, ShedOldest, ShedSampled, Depth and
+	 * Rejected (CFEvents rejected by the CF event service)
+	 * 
+	 * @return the ingress counters
+	 */
+	public HashMap<String, Long> getIngressStatistics() {
+		return this.gateway.getIngressStatistics();
+	}
+	
+	/**
+	 * get the runtime metrics of the gateway as a struct- the counters
+	 * TrapsReceived, ReceiveErrors, TrapsDecoded, EventsDispatched, EventsRejected,
+	 * TrapsDropped, InformsAnswered, CacheHits, RequestTimeouts, RequestErrors
+	 * and Requests (Sent, Timeouts and Errors for each request type), and the
+	 * gauges QueueDepth, QueueCapacity, CachedResponses, DedupWindows and
+	 * RateLimitSenders, and the latency structs RequestLatency (by request
+	 * type) and DispatchLatency (by notification PDU type), each holding
+	 * Count, Mean, P50, P99, P999 and Max in nanoseconds
+	 * 
+	 * @return the runtime metrics
+	 */
+	public HashMap<String, Object> getMetrics() {
+		return this.gateway.getMetrics();
+	}
+	
+	/**
+	 * get the round-trip times of the requests to a target SNMP Agent as a
+	 * struct holding, for each request type, Count, Mean, P50, P99, P999 and
+	 * Max in nanoseconds.  Only the first latency_max_targets targets are
+	 * recorded individually.
+	 * 
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @return the latency of each request type, or an empty struct if the
+	 *         target's latency is not recorded
+	 */
+	public HashMap<String, HashMap<String, Long>> getLatency(SnmpGatewayCredentials cred) {
+		return this.gateway.getMetricsCounters().getTargetLatency(cred.getTargetAddress());
+	}
+	
 	/**
 	 * convenience method to make a set of SNMP Credentials
 	 * 
@@ -152,6 +688,16 @@ public class SnmpGatewayHelper implements GatewayHelper {
 		return new SnmpGatewayCredentials(target, community);
 	}
 	
+    /**
+     * get the kernel's UDP receive counters for the SNMP Gateway event listener
+     * ports (Linux only)- RxQueue, Drops, InErrors and RcvbufErrors
+     * 
+     * @return the UDP receive counters
+     */
+    public HashMap<String, Long> getReceiveDropStatistics() {
+    	return this.gateway.getReceiveDropStatistics();
+    }
+    
     public String getEventListenerAddress() {
     	return this.gateway.getEventListenerAddress();
     }
@@ -164,5 +710,11 @@ public class SnmpGatewayHelper implements GatewayHelper {
     public void setEventListenerPort(String p) {
     	this.gateway.setEventListenerPort(p);
     } 
+    public Vector<String> getEventListenerAddresses() {
+    	return this.gateway.getEventListenerAddresses();
+    }
+    public void setEventListenerAddresses(String a) {
+    	this.gateway.setEventListenerAddresses(a);
+    }
 	
 }
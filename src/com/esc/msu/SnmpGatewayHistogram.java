@@ -0,0 +1,110 @@
+package com.esc.msu;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a histogram of latencies in nanoseconds, in fixed memory and recorded
+ * without locks.
+ * <p>
+ * The buckets are logarithmic: each power of two is divided into eight
+ * linear sub-buckets, so a value is recorded to within 12.5% of its size.
+ * Values below 8 nanoseconds have a bucket each, and values of 2^40
+ * nanoseconds (about 18 minutes) or more share the last bucket.  Recording a
+ * value is an atomic increment of its bucket; a percentile is found by
+ * summing the buckets, and is reported as the highest value of the bucket in
+ * which it falls.
+ */
+public class SnmpGatewayHistogram {
+
+	private final static int SUB_BITS = 3;
+	private final static int SUB_BUCKETS = 1 << SnmpGatewayHistogram.SUB_BITS;
+	private final static int MAX_EXPONENT = 40;
+	private final static int BUCKETS = (SnmpGatewayHistogram.MAX_EXPONENT - SnmpGatewayHistogram.SUB_BITS + 2) *
+									   SnmpGatewayHistogram.SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(SnmpGatewayHistogram.BUCKETS);
+	private final SnmpGatewayCounter total = new SnmpGatewayCounter();
+	private final AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * record a latency
+	 *
+	 * @param nanos the latency in nanoseconds
+	 */
+	void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		this.buckets.getAndIncrement(SnmpGatewayHistogram.getBucket(nanos));
+		this.total.add(nanos);
+		long m = this.max.get();
+		while ((nanos > m) && !this.max.compareAndSet(m, nanos)) {
+			m = this.max.get();
+		}
+	}
+
+	/**
+	 * get the latencies recorded as a HashMap<String, Long> with the entries
+	 * Count, Mean, P50, P99, P999 and Max, in nanoseconds
+	 *
+	 * @return the summary of the histogram
+	 */
+	HashMap<String, Long> getSummary() {
+		long[] b = new long[SnmpGatewayHistogram.BUCKETS];
+		long n = 0;
+		for (int i = 0; i < b.length; i++) {
+			b[i] = this.buckets.get(i);
+			n += b[i];
+		}
+		HashMap<String, Long> s = new HashMap<String, Long>();
+		s.put("Count", Long.valueOf(n));
+		s.put("Mean",  Long.valueOf((n > 0) ? this.total.sum() / n : 0));
+		s.put("P50",  Long.valueOf(SnmpGatewayHistogram.getPercentile(b, n, 0.5)));
+		s.put("P99",  Long.valueOf(SnmpGatewayHistogram.getPercentile(b, n, 0.99)));
+		s.put("P999", Long.valueOf(SnmpGatewayHistogram.getPercentile(b, n, 0.999)));
+		s.put("Max",  Long.valueOf(this.max.get()));
+		return s;
+	}
+
+	/**
+	 * find the highest value of the bucket holding a percentile
+	 */
+	private static long getPercentile(long[] b, long n, double p) {
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long )Math.ceil(p * n);
+		long seen = 0;
+		for (int i = 0; i < b.length; i++) {
+			seen += b[i];
+			if (seen >= rank) {
+				return SnmpGatewayHistogram.getHighestValue(i);
+			}
+		}
+		return SnmpGatewayHistogram.getHighestValue(b.length - 1);
+	}
+
+	private static int getBucket(long v) {
+		if (v < SnmpGatewayHistogram.SUB_BUCKETS) {
+			return (int )v;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(v);
+		if (exponent > SnmpGatewayHistogram.MAX_EXPONENT) {
+			return SnmpGatewayHistogram.BUCKETS - 1;
+		}
+		int shift = exponent - SnmpGatewayHistogram.SUB_BITS;
+		int sub = (int )(v >>> shift) & (SnmpGatewayHistogram.SUB_BUCKETS - 1);
+		return (shift + 1) * SnmpGatewayHistogram.SUB_BUCKETS + sub;
+	}
+
+	private static long getHighestValue(int bucket) {
+		if (bucket < SnmpGatewayHistogram.SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SnmpGatewayHistogram.SUB_BUCKETS - 1;
+		long sub = bucket % SnmpGatewayHistogram.SUB_BUCKETS;
+		return ((SnmpGatewayHistogram.SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,107 @@
+package com.esc.msu;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.PDU;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.IpAddress;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * remembers the INFORM notifications recently received, so that an INFORM
+ * retransmitted by an agent whose response was delayed or lost is answered
+ * again but not dispatched again.
+ * <p>
+ * An INFORM is identified by its sender's IP address, its community (or, for
+ * SNMPv3, its security name and context engine ID) and its request ID.  An
+ * INFORM is remembered for the deduplication window after it was first
+ * received; at most maxEntries are remembered, the oldest being forgotten first.
+ */
+public class SnmpGatewayInformCache {
+
+	private final long window;
+	private final int maxEntries;
+	private final LinkedHashMap<String, Long> seen;
+	private final AtomicLong retransmissions = new AtomicLong(0);
+
+	/**
+	 * construct an INFORM cache
+	 *
+	 * @param window the time in milliseconds an INFORM is remembered
+	 * @param maxEntries the maximum number of INFORMs remembered
+	 */
+	SnmpGatewayInformCache(long window, int maxEntries) {
+		this.window = window;
+		this.maxEntries = Math.max(1, maxEntries);
+		this.seen = new LinkedHashMap<String, Long>(Math.min(this.maxEntries, 1024), 0.75f, false) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return this.size() > SnmpGatewayInformCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * determine whether an INFORM is a retransmission of one received within
+	 * the window, remembering it if not
+	 *
+	 * @param e the received INFORM
+	 * @return true if the INFORM is a retransmission
+	 */
+	boolean isRetransmission(CommandResponderEvent e) {
+		String key = SnmpGatewayInformCache.getKey(e);
+		long now = System.currentTimeMillis();
+
+		synchronized (this.seen) {
+			// entries are in the order first received, so expired ones are at the head
+			Iterator<Long> i = this.seen.values().iterator();
+			while (i.hasNext() && (now - i.next().longValue() >= this.window)) {
+				i.remove();
+			}
+			if (this.seen.containsKey(key)) {
+				this.retransmissions.incrementAndGet();
+				return true;
+			}
+			this.seen.put(key, Long.valueOf(now));
+		}
+		return false;
+	}
+
+	/**
+	 * build the identity of an INFORM
+	 */
+	private static String getKey(CommandResponderEvent e) {
+		StringBuilder k = new StringBuilder(64);
+		Address a = e.getPeerAddress();
+		if (a instanceof IpAddress) {
+			k.append(((IpAddress )a).getInetAddress().getHostAddress());
+		} else {
+			k.append(a);
+		}
+		k.append('|');
+		if (e.getSecurityName() != null) {
+			k.append(new OctetString(e.getSecurityName()).toHexString());
+		}
+		PDU pdu = e.getPDU();
+		if (pdu instanceof ScopedPDU) {
+			OctetString engineID = ((ScopedPDU )pdu).getContextEngineID();
+			k.append('|').append((engineID != null) ? engineID.toHexString() : "");
+		}
+		k.append('|').append(pdu.getRequestID().getValue());
+		return k.toString();
+	}
+
+	/**
+	 * get the number of retransmitted INFORMs recognized
+	 * @return the number of retransmissions
+	 */
+	long getRetransmissions() {
+		return this.retransmissions.get();
+	}
+}
@@ -0,0 +1,731 @@
+package com.esc.msu;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.GenericAddress;
+import org.snmp4j.smi.TcpAddress;
+
+/**
+ * an append-only journal of the SNMP event notifications received by the SNMP
+ * Gateway event listeners, kept in memory-mapped segment files, so that
+ * notifications not yet accepted by the CF event service survive a restart.
+ * <p>
+ * Each message is appended, undecoded, by the listener's receiving thread
+ * before it is queued on its sender's lane (a RAW record), and decoded on the
+ * lane from the record.  A notification is then appended again, decoded,
+ * before it is passed to the gateway, and its RAW record committed; any other
+ * message, and a notification dropped before reaching the gateway, has its
+ * RAW record committed once processed.  Appending is a single sequential copy
+ * into the mapped file, and the journal never forces the file to disk while
+ * running (it survives the process, not the operating system).  Once the
+ * gateway is done with a notification- the CF event service accepted it, or
+ * it was deliberately dropped- its record is marked committed in place.  Each
+ * segment's header keeps its committed offset, below which every record is
+ * committed.
+ * <p>
+ * So only messages still in the socket's receive buffer are lost when the
+ * process stops or crashes.  RAW records left uncommitted- messages still
+ * queued on a lane- are decoded again when replayed, so a v3 notification
+ * sent with authentication is recovered only if replayed within the USM time
+ * window (150 seconds) of its sending.
+ * <p>
+ * When a segment is full the next one, which is created and mapped in
+ * advance on a background thread, is started, so that appending never waits
+ * for a file to be created.  A full segment whose records are all committed
+ * is deleted; when there are more than maxSegments segments the oldest is
+ * deleted even if it still holds uncommitted records.  A segment file that
+ * cannot be deleted yet (some systems refuse to delete a file whose mapping
+ * has not been released) is deleted at a later roll.  On start the
+ * uncommitted records of the existing segments are recovered for replay.
+ * <p>
+ * Segment layout: a header of a magic number and the committed offset,
+ * followed by records of
+ * <pre>
+ *   int    length of the rest of the record
+ *   byte   state- PENDING or COMMITTED
+ *   long   time received
+ *   byte   PDU kind- V1, V2, SCOPED or RAW
+ *   int    message processing model
+ *   int    security model
+ *   int    security level
+ *   short  security name length, security name
+ *   short  peer address length, peer address
+ *   ...    BER encoded PDU, or the whole message as received (RAW)
+ * </pre>
+ * The message processing model, security model, level and name of a RAW
+ * record are those of no message yet- zero and empty.
+ * A record length of zero marks the end of the records in a segment.
+ */
+public class SnmpGatewayJournal {
+
+	private final static int MAGIC = 0x534e4a31; // "SNJ1"
+	private final static int HEADER = 8;
+	private final static int COMMITTED_OFFSET = 4;
+	private final static byte PENDING = 0;
+	private final static byte COMMITTED = 1;
+	private final static byte V1 = 1;
+	private final static byte V2 = 2;
+	private final static byte SCOPED = 3;
+	private final static byte RAW = 4;
+	/**
+	 * the offset in a record of its PDU kind
+	 */
+	private final static int KIND = 4 + 1 + 8;
+	private final static byte[] NO_NAME = new byte[0];
+	private final static String PREFIX = "journal-";
+	private final static String SUFFIX = ".seg";
+
+	/**
+	 * the position of a notification, or a RAW message, in the journal
+	 */
+	static class Record {
+		private final Segment segment;
+		private final int position;
+
+		Record(Segment segment, int position) {
+			this.segment = segment;
+			this.position = position;
+		}
+	}
+
+	/**
+	 * a memory-mapped segment file
+	 */
+	private static class Segment {
+		final long sequence;
+		final File file;
+		FileChannel channel;
+		MappedByteBuffer buffer;
+		int writePos = SnmpGatewayJournal.HEADER;
+		int committedPos = SnmpGatewayJournal.HEADER;
+		boolean sealed = false;
+
+		Segment(long sequence, File file) {
+			this.sequence = sequence;
+			this.file = file;
+		}
+
+		boolean isOpen() {
+			return this.buffer != null;
+		}
+
+		boolean isDone() {
+			return this.sealed && (this.committedPos >= this.writePos);
+		}
+
+		/**
+		 * advance the committed offset over committed records
+		 */
+		void advance() {
+			while (this.committedPos < this.writePos) {
+				int len = this.buffer.getInt(this.committedPos);
+				if (len <= 0 || this.buffer.get(this.committedPos + 4) != SnmpGatewayJournal.COMMITTED) {
+					break;
+				}
+				this.committedPos += 4 + len;
+			}
+			this.buffer.putInt(SnmpGatewayJournal.COMMITTED_OFFSET, this.committedPos);
+		}
+
+		void close(boolean force) {
+			if (this.buffer != null) {
+				if (force) {
+					this.buffer.force();
+				}
+				this.buffer = null;
+				try {
+					this.channel.close();
+				} catch (IOException e) {
+					// ignore
+				}
+				this.channel = null;
+			}
+		}
+	}
+
+	/**
+	 * an OutputStream writing into a ByteBuffer at its position
+	 */
+	private static class BufferOutputStream extends OutputStream {
+		private ByteBuffer buffer;
+
+		public void write(int b) {
+			this.buffer.put((byte )b);
+		}
+
+		public void write(byte[] b, int off, int len) {
+			this.buffer.put(b, off, len);
+		}
+	}
+
+	private final SnmpGateway sg;
+	private final File dir;
+	private final int segmentSize;
+	private final int maxSegments;
+	private final Vector<Segment> segments = new Vector<Segment>();
+	private final BufferOutputStream out = new BufferOutputStream();
+	/**
+	 * segment files whose deletion failed, retried at each roll
+	 */
+	private final Vector<File> undeleted = new Vector<File>();
+	/**
+	 * the thread creating the next segment
+	 */
+	private final ExecutorService allocator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "SnmpGatewayJournal");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	private Segment active;
+	/**
+	 * the segment to be started at the next roll, being created in advance
+	 */
+	private Future<Segment> next;
+	private long nextSequence = 0;
+
+	/**
+	 * open the journal in a directory, creating the directory if needed
+	 *
+	 * @param sg the SNMP Gateway
+	 * @param dir the directory holding the segment files
+	 * @param segmentSize the size in bytes of each segment file
+	 * @param maxSegments the maximum number of segment files kept
+	 *
+	 * @throws IOException if the journal cannot be opened
+	 */
+	SnmpGatewayJournal(SnmpGateway sg, File dir, int segmentSize, int maxSegments) throws IOException {
+		this.sg = sg;
+		this.dir = dir;
+		this.segmentSize = Math.max(64 * 1024, segmentSize);
+		this.maxSegments = Math.max(2, maxSegments);
+
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Unable to create journal directory " + dir);
+		}
+		String[] names = dir.list(new FilenameFilter() {
+			public boolean accept(File d, String name) {
+				return name.startsWith(SnmpGatewayJournal.PREFIX) && name.endsWith(SnmpGatewayJournal.SUFFIX);
+			}
+		});
+		Arrays.sort(names);
+		for (String name : names) {
+			long sequence;
+			try {
+				sequence = Long.parseLong(name.substring(SnmpGatewayJournal.PREFIX.length(),
+														 name.length() - SnmpGatewayJournal.SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			Segment s = this.openSegment(sequence, new File(dir, name), -1);
+			if (s == null) {
+				continue;
+			}
+			s.sealed = true;
+			s.advance();
+			if (s.isDone()) {
+				this.deleteSegment(s);
+			} else {
+				this.segments.add(s);
+			}
+			this.nextSequence = Math.max(this.nextSequence, sequence + 1);
+		}
+		this.roll();
+	}
+
+	/**
+	 * map a segment file, scanning an existing file for the end of its records
+	 *
+	 * @param size the size of a new file, or -1 to open an existing file
+	 * @return the segment, or null if an existing file is not a segment
+	 */
+	private Segment openSegment(long sequence, File file, int size) throws IOException {
+		Segment s = new Segment(sequence, file);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (size > 0) {
+				raf.setLength(size);
+			} else if (raf.length() < SnmpGatewayJournal.HEADER || raf.length() > Integer.MAX_VALUE) {
+				raf.close();
+				return null;
+			}
+			s.channel = raf.getChannel();
+			s.buffer = s.channel.map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+
+		if (size > 0) {
+			s.buffer.putInt(0, SnmpGatewayJournal.MAGIC);
+			s.buffer.putInt(SnmpGatewayJournal.COMMITTED_OFFSET, SnmpGatewayJournal.HEADER);
+		} else {
+			if (s.buffer.getInt(0) != SnmpGatewayJournal.MAGIC) {
+				s.close(false);
+				return null;
+			}
+			int limit = s.buffer.capacity();
+			int pos = SnmpGatewayJournal.HEADER;
+			while (pos + 4 <= limit) {
+				int len = s.buffer.getInt(pos);
+				if (len <= 0 || pos + 4 + len > limit) {
+					break;
+				}
+				pos += 4 + len;
+			}
+			s.writePos = pos;
+			s.committedPos = Math.max(SnmpGatewayJournal.HEADER,
+									  Math.min(pos, s.buffer.getInt(SnmpGatewayJournal.COMMITTED_OFFSET)));
+		}
+		return s;
+	}
+
+	private File getFile(long sequence) {
+		return new File(this.dir, SnmpGatewayJournal.PREFIX + String.format("%020d", Long.valueOf(sequence)) +
+								  SnmpGatewayJournal.SUFFIX);
+	}
+
+	/**
+	 * start creating the segment for the next roll on the allocator thread
+	 */
+	private void prepare() {
+		final long sequence = this.nextSequence++;
+		this.next = this.allocator.submit(new Callable<Segment>() {
+			public Segment call() throws IOException {
+				return SnmpGatewayJournal.this.openSegment(sequence, SnmpGatewayJournal.this.getFile(sequence),
+														   SnmpGatewayJournal.this.segmentSize);
+			}
+		});
+	}
+
+	/**
+	 * take the segment created in advance for this roll
+	 *
+	 * @return the segment, or null if it could not be created
+	 */
+	private Segment takeNext() throws IOException {
+		if (this.next == null) {
+			return null;
+		}
+		try {
+			Segment s = this.next.get();
+			this.next = null;
+			return s;
+		} catch (ExecutionException e) {
+			this.next = null;
+			this.sg.logWarn("Unable to create SNMP event notification journal segment: " + e.getCause());
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for the next journal segment");
+		}
+	}
+
+	/**
+	 * seal the active segment and start the next one, deleting the oldest
+	 * segment if there are too many
+	 */
+	private void roll() throws IOException {
+		Segment previous = this.active;
+		Segment s = this.takeNext();
+		if (s == null) {
+			long sequence = this.nextSequence++;
+			s = this.openSegment(sequence, this.getFile(sequence), this.segmentSize);
+		}
+		this.active = s;
+		this.segments.add(s);
+		this.prepare();
+
+		Iterator<File> i = this.undeleted.iterator();
+		while (i.hasNext()) {
+			File f = i.next();
+			if (f.delete() || !f.exists()) {
+				i.remove();
+			}
+		}
+
+		if (previous != null) {
+			boolean done;
+			synchronized (previous) {
+				previous.sealed = true;
+				done = previous.isDone();
+			}
+			if (done) {
+				this.deleteSegment(previous);
+			}
+		}
+		while (this.segments.size() > this.maxSegments) {
+			Segment oldest = this.segments.get(0);
+			this.sg.logWarn("SNMP event notification journal full- discarding segment " + oldest.file.getName());
+			this.deleteSegment(oldest);
+		}
+	}
+
+	private void deleteSegment(Segment s) {
+		synchronized (s) {
+			s.close(false);
+		}
+		this.segments.remove(s);
+		if (!s.file.delete() && s.file.exists()) {
+			// retried at the next roll, once the mapping may have been released
+			this.undeleted.add(s.file);
+		}
+	}
+
+	/**
+	 * append a notification to the journal
+	 *
+	 * @param e the received notification
+	 * @param timeReceived the time the notification was received
+	 * @return the position of the notification in the journal, or null if
+	 *         it could not be journaled
+	 */
+	synchronized Record append(CommandResponderEvent e, long timeReceived) {
+		PDU pdu = e.getPDU();
+		if (pdu == null) {
+			return null;
+		}
+		byte kind = (pdu instanceof PDUv1) ? SnmpGatewayJournal.V1 :
+					(pdu instanceof ScopedPDU) ? SnmpGatewayJournal.SCOPED : SnmpGatewayJournal.V2;
+		byte[] securityName = e.getSecurityName();
+		if (securityName == null) {
+			securityName = SnmpGatewayJournal.NO_NAME;
+		}
+		return this.append(timeReceived, kind, e.getMessageProcessingModel(), e.getSecurityModel(),
+						   e.getSecurityLevel(), securityName, e.getPeerAddress(), pdu, null);
+	}
+
+	/**
+	 * append a message, undecoded, to the journal as a RAW record
+	 *
+	 * @param sender the transport address of the sender
+	 * @param message the whole message as received, from its position to
+	 *        its limit; its position is left unchanged
+	 * @param timeReceived the time the message was received
+	 * @return the position of the message in the journal, or null if it
+	 *         could not be journaled
+	 */
+	synchronized Record append(Address sender, ByteBuffer message, long timeReceived) {
+		return this.append(timeReceived, SnmpGatewayJournal.RAW, 0, 0, 0, SnmpGatewayJournal.NO_NAME,
+						   sender, null, message);
+	}
+
+	/**
+	 * append a record holding either a decoded PDU or a whole message
+	 */
+	private Record append(long timeReceived, byte kind, int messageModel, int securityModel,
+						  int securityLevel, byte[] securityName, Address peer, PDU pdu, ByteBuffer message) {
+		if (this.active == null || peer == null) {
+			return null;
+		}
+		String address = ((peer instanceof TcpAddress) ? "tcp:" : "udp:") + peer.toString();
+		int body = (pdu != null) ? pdu.getBERLength() : message.remaining();
+		int len = 1 + 8 + 1 + 4 + 4 + 4 + 2 + securityName.length + 2 + address.length() + body;
+		if (SnmpGatewayJournal.HEADER + 4 + len > this.segmentSize) {
+			return null;
+		}
+
+		try {
+			if (this.active.writePos + 4 + len > this.active.buffer.capacity()) {
+				this.roll();
+			}
+			Segment s = this.active;
+			int position = s.writePos;
+			ByteBuffer b = s.buffer;
+			b.position(position + 4);
+			b.put(SnmpGatewayJournal.PENDING);
+			b.putLong(timeReceived);
+			b.put(kind);
+			b.putInt(messageModel);
+			b.putInt(securityModel);
+			b.putInt(securityLevel);
+			b.putShort((short )securityName.length);
+			b.put(securityName);
+			// an address is ASCII
+			b.putShort((short )address.length());
+			for (int i = 0; i < address.length(); i++) {
+				b.put((byte )address.charAt(i));
+			}
+			if (pdu != null) {
+				this.out.buffer = b;
+				pdu.encodeBER(this.out);
+			} else {
+				int start = message.position();
+				b.put(message);
+				message.position(start);
+			}
+			// publish the record by writing its length last
+			synchronized (s) {
+				b.putInt(position, len);
+				s.writePos = position + 4 + len;
+			}
+			return new Record(s, position);
+		} catch (IOException ex) {
+			this.sg.logWarn("Unable to journal SNMP event notification: " + ex.getMessage());
+		} catch (RuntimeException ex) {
+			this.sg.logWarn("Unable to journal SNMP event notification: " + ex.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * get the message of a RAW record.  The buffer reads the mapped segment
+	 * file, and stays readable after the segment is closed or deleted.
+	 *
+	 * @param r the position of the message in the journal
+	 * @return the whole message as received, or null if the segment is closed
+	 */
+	ByteBuffer getMessage(Record r) {
+		Segment s = r.segment;
+
+		synchronized (s) {
+			if (!s.isOpen()) {
+				return null;
+			}
+			ByteBuffer b = s.buffer.duplicate();
+			int end = r.position + 4 + b.getInt(r.position);
+			int pos = r.position + SnmpGatewayJournal.KIND + 1 + 4 + 4 + 4;
+			pos += 2 + b.getShort(pos);
+			pos += 2 + b.getShort(pos);
+			b.limit(end);
+			b.position(pos);
+			return b.slice();
+		}
+	}
+
+	/**
+	 * get the sender of a RAW record
+	 *
+	 * @param r the position of the message in the journal
+	 * @return the transport address of the sender, or null if the segment
+	 *         is closed or the address cannot be read
+	 */
+	Address getSender(Record r) {
+		Segment s = r.segment;
+
+		synchronized (s) {
+			if (!s.isOpen()) {
+				return null;
+			}
+			ByteBuffer b = s.buffer.duplicate();
+			int pos = r.position + SnmpGatewayJournal.KIND + 1 + 4 + 4 + 4;
+			pos += 2 + b.getShort(pos);
+			byte[] address = new byte[b.getShort(pos)];
+			b.position(pos + 2);
+			b.get(address);
+			try {
+				return GenericAddress.parse(new String(address));
+			} catch (RuntimeException ex) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * get the time a journaled notification or message was received
+	 *
+	 * @param r the position of the notification or message in the journal
+	 * @return the time received, or 0 if the segment is closed
+	 */
+	long getTimeReceived(Record r) {
+		Segment s = r.segment;
+
+		synchronized (s) {
+			return s.isOpen() ? s.buffer.getLong(r.position + 4 + 1) : 0;
+		}
+	}
+
+	/**
+	 * mark a notification committed- the gateway is done with it
+	 *
+	 * @param r the position of the notification in the journal
+	 */
+	void commit(Record r) {
+		Segment s = r.segment;
+		boolean done;
+
+		synchronized (s) {
+			if (!s.isOpen()) {
+				return;
+			}
+			s.buffer.put(r.position + 4, SnmpGatewayJournal.COMMITTED);
+			if (r.position != s.committedPos) {
+				return;
+			}
+			s.advance();
+			done = s.isDone();
+		}
+		if (done) {
+			synchronized (this) {
+				if (s.isOpen()) {
+					this.deleteSegment(s);
+				}
+			}
+		}
+	}
+
+	/**
+	 * recover the uncommitted notifications of the segments written before
+	 * the journal was opened, oldest first; uncommitted RAW records are
+	 * recovered by recoverMessages()
+	 *
+	 * @return the uncommitted notifications, each carrying its journal record
+	 */
+	synchronized Vector<SnmpGatewayEvent> recover() {
+		Vector<SnmpGatewayEvent> events = new Vector<SnmpGatewayEvent>();
+		MessageDispatcherImpl dispatcher = new MessageDispatcherImpl();
+
+		for (Segment s : new Vector<Segment>(this.segments)) {
+			if (s == this.active) {
+				continue;
+			}
+			synchronized (s) {
+				int pos = s.committedPos;
+				while (pos < s.writePos) {
+					int len = s.buffer.getInt(pos);
+					if (s.buffer.get(pos + 4) == SnmpGatewayJournal.PENDING &&
+						s.buffer.get(pos + SnmpGatewayJournal.KIND) != SnmpGatewayJournal.RAW) {
+						SnmpGatewayEvent e = this.decode(dispatcher, s.buffer, pos, len);
+						if (e != null) {
+							e.setJournalRecord(new Record(s, pos));
+							events.add(e);
+						} else {
+							s.buffer.put(pos + 4, SnmpGatewayJournal.COMMITTED);
+						}
+					}
+					pos += 4 + len;
+				}
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * recover the uncommitted RAW records of the segments written before
+	 * the journal was opened, oldest first- the messages still queued on a
+	 * lane when the gateway stopped, which are to be decoded again
+	 *
+	 * @return the positions of the uncommitted messages in the journal
+	 */
+	synchronized Vector<Record> recoverMessages() {
+		Vector<Record> messages = new Vector<Record>();
+
+		for (Segment s : new Vector<Segment>(this.segments)) {
+			if (s == this.active) {
+				continue;
+			}
+			synchronized (s) {
+				int pos = s.committedPos;
+				while (pos < s.writePos) {
+					int len = s.buffer.getInt(pos);
+					if (s.buffer.get(pos + 4) == SnmpGatewayJournal.PENDING &&
+						s.buffer.get(pos + SnmpGatewayJournal.KIND) == SnmpGatewayJournal.RAW) {
+						messages.add(new Record(s, pos));
+					}
+					pos += 4 + len;
+				}
+			}
+		}
+		return messages;
+	}
+
+	/**
+	 * decode a journal record into a notification
+	 *
+	 * @return the notification, or null if the record cannot be decoded
+	 */
+	private SnmpGatewayEvent decode(MessageDispatcherImpl dispatcher, MappedByteBuffer buffer, int pos, int len) {
+		ByteBuffer b = buffer.duplicate();
+		b.limit(pos + 4 + len);
+		b.position(pos + 5);
+		try {
+			long timeReceived = b.getLong();
+			byte kind = b.get();
+			int messageModel = b.getInt();
+			int securityModel = b.getInt();
+			int securityLevel = b.getInt();
+			byte[] securityName = new byte[b.getShort()];
+			b.get(securityName);
+			byte[] address = new byte[b.getShort()];
+			b.get(address);
+			PDU pdu = (kind == SnmpGatewayJournal.V1) ? new PDUv1() :
+					  (kind == SnmpGatewayJournal.SCOPED) ? new ScopedPDU() : new PDU();
+			pdu.decodeBER(new BERInputStream(b.slice()));
+
+			CommandResponderEvent e = new CommandResponderEvent(dispatcher, null,
+																GenericAddress.parse(new String(address)),
+																messageModel, securityModel, securityName,
+																securityLevel, null, pdu, 0, null);
+			return new SnmpGatewayEvent(e, timeReceived);
+		} catch (IOException ex) {
+			this.sg.logWarn("Unable to replay journaled SNMP event notification: " + ex.getMessage());
+		} catch (RuntimeException ex) {
+			this.sg.logWarn("Unable to replay journaled SNMP event notification: " + ex.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * get the number of segment files
+	 * @return the number of segment files
+	 */
+	synchronized int getSegmentCount() {
+		return this.segments.size();
+	}
+
+	/**
+	 * close the journal, writing the segments to disk; uncommitted
+	 * notifications are recovered when the journal is next opened
+	 */
+	synchronized void close() {
+		for (Segment s : this.segments) {
+			synchronized (s) {
+				if (s.isOpen()) {
+					s.advance();
+					s.close(true);
+				}
+			}
+		}
+		this.segments.clear();
+		this.active = null;
+		// the segment created in advance holds no records
+		try {
+			Segment s = this.takeNext();
+			if (s != null) {
+				s.close(false);
+				s.file.delete();
+			}
+		} catch (IOException e) {
+			// interrupted- an empty segment file is skipped on recovery
+		}
+		this.allocator.shutdown();
+		for (File f : this.undeleted) {
+			f.delete();
+		}
+		this.undeleted.clear();
+	}
+}
@@ -0,0 +1,300 @@
+package com.esc.msu;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+import org.snmp4j.CommandResponder;
+import org.snmp4j.MessageDispatcher;
+import org.snmp4j.MessageException;
+import org.snmp4j.PDU;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.mp.PduHandle;
+import org.snmp4j.mp.PduHandleCallback;
+import org.snmp4j.mp.StateReference;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.IpAddress;
+
+/**
+ * a message dispatcher for the SNMP Gateway event listener which decodes
+ * incoming messages on per-sender lanes rather than on the transport's
+ * receiving thread.
+ * <p>
+ * Like org.snmp4j.util.MultiThreadedMessageDispatcher it wraps a
+ * MessageDispatcherImpl, but the receiving thread only copies each message
+ * into a reused buffer from the lane's pool (see SnmpGatewayBufferPool) and
+ * queues it, with its sender, on the lane selected by the sender's IP
+ * address.  The lane's thread then decodes the message (BER decoding and USM
+ * processing) and passes the PDU to the command responders, so an INFORM is
+ * answered, and its event notification processed, on the lane.  Every
+ * message from a given sender is decoded on the same lane, in the order
+ * received; messages from different senders are decoded in parallel.
+ * <p>
+ * When the gateway keeps a journal the message is copied into the journal,
+ * as a RAW record, instead, and decoded on the lane from the mapped record,
+ * which is committed once the message is processed or shed.  A
+ * message still queued when the gateway stops is thus replayed at the next
+ * start.
+ */
+public class SnmpGatewayLaneDispatcher implements MessageDispatcher {
+
+	/**
+	 * a received message waiting on a lane to be decoded
+	 */
+	class Message implements SnmpGatewayEventQueue.Task {
+		final TransportMapping transport;
+		final Address sender;
+		final ByteBuffer bytes;
+		final long timeReceived;
+		final long nanosReceived;
+		final SnmpGatewayBufferPool pool;
+		final SnmpGatewayJournal journal;
+		final SnmpGatewayJournal.Record record;
+
+		Message(TransportMapping transport, Address sender, ByteBuffer bytes, SnmpGatewayBufferPool pool,
+				long timeReceived, long nanosReceived, SnmpGatewayJournal journal,
+				SnmpGatewayJournal.Record record) {
+			this.transport = transport;
+			this.sender = sender;
+			this.bytes = bytes;
+			this.pool = pool;
+			this.timeReceived = timeReceived;
+			this.nanosReceived = nanosReceived;
+			this.journal = journal;
+			this.record = record;
+		}
+
+		/**
+		 * decode the message and pass its PDU to the command responders,
+		 * then return its buffer to the pool, or commit its RAW record- a
+		 * notification passed along has been journaled again, decoded
+		 */
+		public void run() {
+			SnmpGatewayLaneDispatcher.this.current.set(this);
+			try {
+				SnmpGatewayLaneDispatcher.this.dispatcher.processMessage(this.transport, this.sender, this.bytes);
+			} finally {
+				SnmpGatewayLaneDispatcher.this.current.remove();
+				this.discard();
+			}
+		}
+
+		public void discard() {
+			if (this.pool != null) {
+				this.pool.release(this.bytes);
+			}
+			if (this.record != null) {
+				this.journal.commit(this.record);
+			}
+		}
+
+		/**
+		 * @return true if the message is replayed from the journal
+		 */
+		boolean isReplayed() {
+			return this.nanosReceived == 0;
+		}
+
+		public String toString() {
+			return String.valueOf(this.sender);
+		}
+	}
+
+	private final SnmpGateway sg;
+	private final MessageDispatcher dispatcher;
+	private final SnmpGatewayEventQueue[] lanes;
+	/**
+	 * the buffers of each lane
+	 */
+	private final SnmpGatewayBufferPool[] pools;
+	/**
+	 * the message being decoded by each thread
+	 */
+	private final ThreadLocal<Message> current = new ThreadLocal<Message>();
+
+	/**
+	 * construct a lane dispatcher
+	 *
+	 * @param sg the SNMP Gateway, whose journal the messages are appended to
+	 * @param dispatcher the dispatcher which decodes the messages
+	 * @param lanes the lanes on which the messages are decoded
+	 * @param poolSize the most buffers kept in the pool of each lane
+	 */
+	SnmpGatewayLaneDispatcher(SnmpGateway sg, MessageDispatcher dispatcher, SnmpGatewayEventQueue[] lanes,
+							  int poolSize) {
+		this.sg = sg;
+		this.dispatcher = dispatcher;
+		this.lanes = lanes;
+		this.pools = new SnmpGatewayBufferPool[lanes.length];
+		for (int i = 0; i < lanes.length; i++) {
+			this.pools[i] = new SnmpGatewayBufferPool(poolSize);
+		}
+	}
+
+	/**
+	 * queue a received message on its sender's lane.  The buffer may be
+	 * reused by the transport once this returns, so the message is copied-
+	 * into the journal, if the gateway keeps one, or into a buffer from the
+	 * lane's pool.
+	 */
+	public void processMessage(TransportMapping sourceTransport, Address incomingAddress, ByteBuffer wholeMessage) {
+		long timeReceived = System.currentTimeMillis();
+		long nanosReceived = System.nanoTime();
+		SnmpGatewayJournal journal = this.sg.getJournal();
+		SnmpGatewayJournal.Record record = null;
+		ByteBuffer bytes = null;
+
+		if (journal != null) {
+			record = journal.append(incomingAddress, wholeMessage, timeReceived);
+			if (record != null) {
+				bytes = journal.getMessage(record);
+			}
+		}
+		int sender = SnmpGatewayLaneDispatcher.getSenderHash(incomingAddress);
+		int lane = (sender & 0x7fffffff) % this.lanes.length;
+		SnmpGatewayBufferPool pool = null;
+		if (bytes == null) {
+			pool = this.pools[lane];
+			bytes = pool.copy(wholeMessage);
+		}
+		this.lanes[lane].offer(new Message(sourceTransport, incomingAddress, bytes, pool, timeReceived,
+										   nanosReceived, journal, record), sender);
+	}
+
+	/**
+	 * decode a message replayed from the RAW record of a journal on the
+	 * calling thread, as if received by the given transport.  The record is
+	 * committed once the message is processed.
+	 *
+	 * @param transport the transport deemed to have received the message
+	 * @param journal the journal
+	 * @param record the position of the message in the journal
+	 */
+	void replay(TransportMapping transport, SnmpGatewayJournal journal, SnmpGatewayJournal.Record record) {
+		Address sender = journal.getSender(record);
+		ByteBuffer bytes = journal.getMessage(record);
+
+		if (sender == null || bytes == null) {
+			journal.commit(record);
+			return;
+		}
+		// a nanosReceived of 0 marks the message replayed
+		new Message(transport, sender, bytes, null, journal.getTimeReceived(record), 0, journal, record).run();
+	}
+
+	/**
+	 * get the message being decoded by the calling thread, whose PDU is being
+	 * passed to the command responders
+	 *
+	 * @return the message, or null
+	 */
+	Message getCurrentMessage() {
+		return this.current.get();
+	}
+
+	/**
+	 * queue a received message on its sender's lane; the deprecated form of
+	 * processMessage(), still part of the interface
+	 */
+	@SuppressWarnings("deprecation")
+	public void processMessage(TransportMapping sourceTransport, Address incomingAddress, BERInputStream wholeMessage) {
+		this.processMessage(sourceTransport, incomingAddress, wholeMessage.getBuffer());
+	}
+
+	/**
+	 * get the hash identifying the sender of a message, which selects the
+	 * lane on which its messages are decoded
+	 *
+	 * @param sender the transport address of the sender
+	 * @return the hash of the sender
+	 */
+	private static int getSenderHash(Address sender) {
+		int h;
+
+		if (sender instanceof IpAddress) {
+			// senders may use a new source port for every notification
+			h = ((IpAddress )sender).getInetAddress().hashCode();
+		} else {
+			h = (sender != null) ? sender.hashCode() : 0;
+		}
+		return h;
+	}
+
+	public int getNextRequestID() {
+		return this.dispatcher.getNextRequestID();
+	}
+
+	public void addMessageProcessingModel(MessageProcessingModel model) {
+		this.dispatcher.addMessageProcessingModel(model);
+	}
+
+	public void removeMessageProcessingModel(MessageProcessingModel model) {
+		this.dispatcher.removeMessageProcessingModel(model);
+	}
+
+	public MessageProcessingModel getMessageProcessingModel(int messageProcessingModel) {
+		return this.dispatcher.getMessageProcessingModel(messageProcessingModel);
+	}
+
+	public void addTransportMapping(TransportMapping transport) {
+		this.dispatcher.addTransportMapping(transport);
+	}
+
+	public TransportMapping removeTransportMapping(TransportMapping transport) {
+		return this.dispatcher.removeTransportMapping(transport);
+	}
+
+	public Collection<?> getTransportMappings() {
+		return this.dispatcher.getTransportMappings();
+	}
+
+	public TransportMapping getTransport(Address destAddress) {
+		return this.dispatcher.getTransport(destAddress);
+	}
+
+	public void addCommandResponder(CommandResponder listener) {
+		this.dispatcher.addCommandResponder(listener);
+	}
+
+	public void removeCommandResponder(CommandResponder listener) {
+		this.dispatcher.removeCommandResponder(listener);
+	}
+
+	public PduHandle sendPdu(Address transportAddress, int messageProcessingModel, int securityModel,
+							 byte[] securityName, int securityLevel, PDU pdu, boolean expectResponse)
+		throws MessageException {
+		return this.dispatcher.sendPdu(transportAddress, messageProcessingModel, securityModel,
+									   securityName, securityLevel, pdu, expectResponse);
+	}
+
+	public PduHandle sendPdu(TransportMapping transportMapping, Address transportAddress,
+							 int messageProcessingModel, int securityModel, byte[] securityName,
+							 int securityLevel, PDU pdu, boolean expectResponse) throws MessageException {
+		return this.dispatcher.sendPdu(transportMapping, transportAddress, messageProcessingModel,
+									   securityModel, securityName, securityLevel, pdu, expectResponse);
+	}
+
+	public PduHandle sendPdu(TransportMapping transportMapping, Address transportAddress,
+							 int messageProcessingModel, int securityModel, byte[] securityName,
+							 int securityLevel, PDU pdu, boolean expectResponse, PduHandleCallback callback)
+		throws MessageException {
+		return this.dispatcher.sendPdu(transportMapping, transportAddress, messageProcessingModel,
+									   securityModel, securityName, securityLevel, pdu, expectResponse,
+									   callback);
+	}
+
+	public int returnResponsePdu(int messageProcessingModel, int securityModel, byte[] securityName,
+								 int securityLevel, PDU pdu, int maxSizeResponseScopedPDU,
+								 StateReference stateReference, StatusInformation statusInformation)
+		throws MessageException {
+		return this.dispatcher.returnResponsePdu(messageProcessingModel, securityModel, securityName,
+												 securityLevel, pdu, maxSizeResponseScopedPDU,
+												 stateReference, statusInformation);
+	}
+
+	public void releaseStateReference(int messageProcessingModel, PduHandle pduHandle) {
+		this.dispatcher.releaseStateReference(messageProcessingModel, pduHandle);
+	}
+}
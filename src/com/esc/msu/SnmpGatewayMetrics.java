@@ -0,0 +1,263 @@
+package com.esc.msu;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.snmp4j.PDU;
+
+/**
+ * the runtime counters of an SNMP Gateway- SNMP event notifications received,
+ * decoded and dispatched, INFORMs answered, and helper requests by type- and
+ * its latency histograms.
+ * <p>
+ * Each counter is an SnmpGatewayCounter, so the listener, dispatcher and
+ * request threads count without contending with one another.  The round-trip
+ * times of helper requests are recorded by request type and, for at most
+ * maxTargets target SNMP Agents, by target and request type; the time from
+ * receiving an SNMP event notification to its acceptance by the CF event
+ * service is recorded by notification PDU type.  The gauges
+ * (queue depths and the like) are read from their owners when the metrics
+ * are retrieved, see SnmpGateway.getMetrics().
+ */
+public class SnmpGatewayMetrics {
+
+	/**
+	 * the counters of one type of helper request
+	 */
+	private static class RequestCounters {
+		final SnmpGatewayCounter sent = new SnmpGatewayCounter();
+		final SnmpGatewayCounter timeouts = new SnmpGatewayCounter();
+		final SnmpGatewayCounter errors = new SnmpGatewayCounter();
+		final SnmpGatewayHistogram latency = new SnmpGatewayHistogram();
+	}
+
+	/**
+	 * SNMP event notifications (traps and INFORMs) received by the listeners
+	 */
+	final SnmpGatewayCounter trapsReceived = new SnmpGatewayCounter();
+	/**
+	 * datagrams the listeners' transports failed to receive or process
+	 */
+	final SnmpGatewayCounter receiveErrors = new SnmpGatewayCounter();
+	/**
+	 * SNMP event notifications decoded into event data
+	 */
+	final SnmpGatewayCounter trapsDecoded = new SnmpGatewayCounter();
+	/**
+	 * CFEvents of SNMP event notifications accepted by the CF event service
+	 */
+	final SnmpGatewayCounter eventsDispatched = new SnmpGatewayCounter();
+	/**
+	 * CFEvents of SNMP event notifications rejected by the CF event service
+	 */
+	final SnmpGatewayCounter eventsRejected = new SnmpGatewayCounter();
+	/**
+	 * INFORMs answered with a RESPONSE
+	 */
+	final SnmpGatewayCounter informsAnswered = new SnmpGatewayCounter();
+	/**
+	 * helper Get-Requests answered from the response cache
+	 */
+	final SnmpGatewayCounter cacheHits = new SnmpGatewayCounter();
+
+	private final ConcurrentHashMap<String, RequestCounters> requests =
+		new ConcurrentHashMap<String, RequestCounters>(8, 0.75f, 4);
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, SnmpGatewayHistogram>> targetLatency =
+		new ConcurrentHashMap<String, ConcurrentHashMap<String, SnmpGatewayHistogram>>();
+	private final ConcurrentHashMap<String, SnmpGatewayHistogram> dispatchLatency =
+		new ConcurrentHashMap<String, SnmpGatewayHistogram>(4, 0.75f, 4);
+	private volatile int maxTargets = 0;
+
+	/**
+	 * set the maximum number of target SNMP Agents whose round-trip times are
+	 * recorded individually
+	 *
+	 * @param maxTargets the maximum number of targets; 0 disables per-target latency
+	 */
+	void setMaxTargets(int maxTargets) {
+		this.maxTargets = Math.max(0, maxTargets);
+	}
+
+	/**
+	 * count a completed helper request- a timeout if there was no response,
+	 * an error if the response carries an error status- and record its
+	 * round-trip time if it was answered
+	 *
+	 * @param type the request type, for example "GET" or "GETBULK"
+	 * @param target the target SNMP Agent to which the request was sent
+	 * @param response the response PDU, or null when no response was received
+	 * @param nanos the time in nanoseconds from sending the request to its completion
+	 */
+	void request(String type, String target, PDU response, long nanos) {
+		RequestCounters c = this.getRequestCounters(type);
+		c.sent.increment();
+		if (response == null) {
+			// a timeout's duration is that of the retry policy, not of the agent
+			c.timeouts.increment();
+			return;
+		}
+		if (response.getErrorStatus() != PDU.noError) {
+			c.errors.increment();
+		}
+		c.latency.record(nanos);
+		if (this.maxTargets > 0) {
+			SnmpGatewayHistogram h = this.getTargetHistogram(target, type);
+			if (h != null) {
+				h.record(nanos);
+			}
+		}
+	}
+
+	/**
+	 * record the time from receiving an SNMP event notification to the
+	 * acceptance of its event data by the CF event service
+	 *
+	 * @param type the notification PDU type, for example "TRAP" or "INFORM"
+	 * @param nanos the latency in nanoseconds
+	 */
+	void dispatched(String type, long nanos) {
+		SnmpGatewayHistogram h = this.dispatchLatency.get(type);
+		if (h == null) {
+			SnmpGatewayHistogram created = new SnmpGatewayHistogram();
+			h = this.dispatchLatency.putIfAbsent(type, created);
+			if (h == null) {
+				h = created;
+			}
+		}
+		h.record(nanos);
+	}
+
+	/**
+	 * count a helper request that could not be sent
+	 *
+	 * @param type the request type, for example "GET" or "GETBULK"
+	 */
+	void requestFailed(String type) {
+		RequestCounters c = this.getRequestCounters(type);
+		c.sent.increment();
+		c.errors.increment();
+	}
+
+	private RequestCounters getRequestCounters(String type) {
+		RequestCounters c = this.requests.get(type);
+		if (c == null) {
+			RequestCounters created = new RequestCounters();
+			c = this.requests.putIfAbsent(type, created);
+			if (c == null) {
+				c = created;
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * get the histogram of a target and request type
+	 *
+	 * @return the histogram, or null if maxTargets targets are already recorded
+	 */
+	private SnmpGatewayHistogram getTargetHistogram(String target, String type) {
+		ConcurrentHashMap<String, SnmpGatewayHistogram> byType = this.targetLatency.get(target);
+		if (byType == null) {
+			if (this.targetLatency.size() >= this.maxTargets) {
+				return null;
+			}
+			ConcurrentHashMap<String, SnmpGatewayHistogram> created =
+				new ConcurrentHashMap<String, SnmpGatewayHistogram>(4, 0.75f, 2);
+			byType = this.targetLatency.putIfAbsent(target, created);
+			if (byType == null) {
+				byType = created;
+			}
+		}
+		SnmpGatewayHistogram h = byType.get(type);
+		if (h == null) {
+			SnmpGatewayHistogram created = new SnmpGatewayHistogram();
+			h = byType.putIfAbsent(type, created);
+			if (h == null) {
+				h = created;
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * get the round-trip times of the helper requests to a target SNMP Agent
+	 * as a HashMap<String, HashMap<String, Long>> holding the latency summary
+	 * of each request type
+	 *
+	 * @param target the target SNMP Agent
+	 * @return the latency summaries, empty if the target's round-trip times
+	 *         are not recorded
+	 */
+	HashMap<String, HashMap<String, Long>> getTargetLatency(String target) {
+		HashMap<String, HashMap<String, Long>> latency = new HashMap<String, HashMap<String, Long>>();
+		ConcurrentHashMap<String, SnmpGatewayHistogram> byType = this.targetLatency.get(target);
+		if (byType != null) {
+			for (Map.Entry<String, SnmpGatewayHistogram> entry : byType.entrySet()) {
+				latency.put(entry.getKey(), entry.getValue().getSummary());
+			}
+		}
+		return latency;
+	}
+
+	/**
+	 * add the latency summaries to a set of metrics- the entries
+	 * RequestLatency, holding the round-trip time summary of each request
+	 * type, and DispatchLatency, holding the receive to dispatch summary of
+	 * each notification PDU type.  Each summary has the entries Count, Mean,
+	 * P50, P99, P999 and Max, in nanoseconds.
+	 *
+	 * @param metrics the metrics to which the latency summaries are added
+	 */
+	void addLatency(HashMap<String, Object> metrics) {
+		HashMap<String, HashMap<String, Long>> requestLatency = new HashMap<String, HashMap<String, Long>>();
+		for (Map.Entry<String, RequestCounters> entry : this.requests.entrySet()) {
+			requestLatency.put(entry.getKey(), entry.getValue().latency.getSummary());
+		}
+		metrics.put("RequestLatency", requestLatency);
+
+		HashMap<String, HashMap<String, Long>> dispatchLatency = new HashMap<String, HashMap<String, Long>>();
+		for (Map.Entry<String, SnmpGatewayHistogram> entry : this.dispatchLatency.entrySet()) {
+			dispatchLatency.put(entry.getKey(), entry.getValue().getSummary());
+		}
+		metrics.put("DispatchLatency", dispatchLatency);
+	}
+
+	/**
+	 * add the counters to a set of metrics- the entries TrapsReceived,
+	 * ReceiveErrors, TrapsDecoded, EventsDispatched, EventsRejected, InformsAnswered,
+	 * CacheHits, RequestTimeouts and RequestErrors, and Requests, a
+	 * HashMap<String, HashMap<String, Long>> holding for each request type
+	 * the entries Sent, Timeouts and Errors
+	 *
+	 * @param metrics the metrics to which the counters are added
+	 */
+	void addCounters(HashMap<String, Object> metrics) {
+		metrics.put("TrapsReceived",    Long.valueOf(this.trapsReceived.sum()));
+		metrics.put("ReceiveErrors",    Long.valueOf(this.receiveErrors.sum()));
+		metrics.put("TrapsDecoded",     Long.valueOf(this.trapsDecoded.sum()));
+		metrics.put("EventsDispatched", Long.valueOf(this.eventsDispatched.sum()));
+		metrics.put("EventsRejected",   Long.valueOf(this.eventsRejected.sum()));
+		metrics.put("InformsAnswered",  Long.valueOf(this.informsAnswered.sum()));
+		metrics.put("CacheHits",        Long.valueOf(this.cacheHits.sum()));
+
+		long timeouts = 0;
+		long errors = 0;
+		HashMap<String, HashMap<String, Long>> byType = new HashMap<String, HashMap<String, Long>>();
+		for (Map.Entry<String, RequestCounters> entry : this.requests.entrySet()) {
+			RequestCounters c = entry.getValue();
+			long t = c.timeouts.sum();
+			long e = c.errors.sum();
+			HashMap<String, Long> m = new HashMap<String, Long>();
+			m.put("Sent",     Long.valueOf(c.sent.sum()));
+			m.put("Timeouts", Long.valueOf(t));
+			m.put("Errors",   Long.valueOf(e));
+			byType.put(entry.getKey(), m);
+			timeouts += t;
+			errors += e;
+		}
+		metrics.put("Requests",        byType);
+		metrics.put("RequestTimeouts", Long.valueOf(timeouts));
+		metrics.put("RequestErrors",   Long.valueOf(errors));
+	}
+}
@@ -0,0 +1,171 @@
+package com.esc.msu;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.IpAddress;
+
+/**
+ * limits the rate at which SNMP event notifications are admitted from each
+ * sender, so that one flooding device cannot starve the others.
+ * <p>
+ * Each sender IP address has a token bucket refilled at rate tokens per
+ * second and holding at most burst tokens.  The bucket is kept as a single
+ * theoretical arrival time (the generic cell rate algorithm), so admitting a
+ * notification is one compare-and-set with no lock.  Buckets live in a
+ * ConcurrentHashMap; a bucket idle long enough to have refilled completely
+ * is evicted by a periodic sweep, which also logs a summary of the
+ * notifications each sender had rejected since the last sweep.  At most
+ * maxSenders buckets are kept; further senders share one bucket.
+ */
+public class SnmpGatewayRateLimiter {
+
+	/**
+	 * the token bucket of a sender
+	 */
+	private static class Bucket {
+		/**
+		 * the time in nanoseconds at which the bucket will next be full
+		 */
+		final AtomicLong tat;
+		final AtomicLong rejected = new AtomicLong(0);
+
+		Bucket(long now) {
+			this.tat = new AtomicLong(now);
+		}
+	}
+
+	private final SnmpGateway sg;
+	private final long interval;
+	private final long tolerance;
+	private final long idle;
+	private final int maxSenders;
+	private final ConcurrentHashMap<InetAddress, Bucket> buckets;
+	private final Bucket overflow = new Bucket(System.nanoTime());
+	private final AtomicLong rejected = new AtomicLong(0);
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	/**
+	 * construct a per-sender rate limiter
+	 *
+	 * @param sg the SNMP Gateway, which logs the summaries
+	 * @param rate the number of notifications per second admitted from each sender
+	 * @param burst the number of notifications admitted from a sender at once
+	 * @param idle the time in milliseconds after which an idle sender's bucket is evicted
+	 * @param maxSenders the maximum number of buckets kept
+	 */
+	SnmpGatewayRateLimiter(SnmpGateway sg, int rate, int burst, long idle, int maxSenders) {
+		this.sg = sg;
+		this.interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+		this.tolerance = this.interval * (Math.max(1, burst) - 1);
+		this.idle = TimeUnit.MILLISECONDS.toNanos(Math.max(1, idle));
+		this.maxSenders = Math.max(1, maxSenders);
+		this.buckets = new ConcurrentHashMap<InetAddress, Bucket>(Math.min(this.maxSenders, 1024), 0.75f, 16);
+
+		long period = Math.max(1, idle);
+		this.scheduler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				SnmpGatewayRateLimiter.this.sweep();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * take a token from the bucket of a notification's sender
+	 *
+	 * @param sender the transport address of the sender
+	 * @return true if the notification is admitted, false if the sender has
+	 *         exceeded its rate
+	 */
+	boolean admit(Address sender) {
+		long now = System.nanoTime();
+		Bucket b = this.getBucket(sender, now);
+
+		for (;;) {
+			long tat = b.tat.get();
+			long t = Math.max(tat, now);
+			if (t - now > this.tolerance) {
+				b.rejected.incrementAndGet();
+				this.rejected.incrementAndGet();
+				return false;
+			}
+			if (b.tat.compareAndSet(tat, t + this.interval)) {
+				return true;
+			}
+		}
+	}
+
+	private Bucket getBucket(Address sender, long now) {
+		if (!(sender instanceof IpAddress)) {
+			return this.overflow;
+		}
+		InetAddress a = ((IpAddress )sender).getInetAddress();
+		Bucket b = this.buckets.get(a);
+		if (b == null) {
+			if (this.buckets.size() >= this.maxSenders) {
+				return this.overflow;
+			}
+			Bucket created = new Bucket(now);
+			b = this.buckets.putIfAbsent(a, created);
+			if (b == null) {
+				b = created;
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * log the senders that had notifications rejected since the last sweep,
+	 * and evict the buckets of senders that have been idle
+	 */
+	private void sweep() {
+		long now = System.nanoTime();
+
+		Iterator<Map.Entry<InetAddress, Bucket>> i = this.buckets.entrySet().iterator();
+		while (i.hasNext()) {
+			Map.Entry<InetAddress, Bucket> entry = i.next();
+			Bucket b = entry.getValue();
+			long n = b.rejected.getAndSet(0);
+			if (n > 0) {
+				this.sg.logWarn("Rate limited " + n + " SNMP event notifications from " +
+								entry.getKey().getHostAddress());
+			} else if (now - b.tat.get() > this.idle) {
+				i.remove();
+			}
+		}
+		long n = this.overflow.rejected.getAndSet(0);
+		if (n > 0) {
+			this.sg.logWarn("Rate limited " + n + " SNMP event notifications from untracked senders");
+		}
+	}
+
+	/**
+	 * get the number of notifications rejected
+	 * @return the number of notifications rejected
+	 */
+	long getRejected() {
+		return this.rejected.get();
+	}
+
+	/**
+	 * get the number of senders with a bucket
+	 * @return the number of tracked senders
+	 */
+	int getSenderCount() {
+		return this.buckets.size();
+	}
+
+	/**
+	 * stop sweeping idle buckets
+	 */
+	void stop() {
+		this.scheduler.shutdownNow();
+	}
+}
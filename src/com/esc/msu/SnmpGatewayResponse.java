@@ -21,6 +21,8 @@ public class SnmpGatewayResponse {
 	private final String target;
 	private final PDU response;	
 	private final Vector<String> requestVbs;
+	private final boolean cached;
+	private long requestNanos = -1;
 	
 	/**
 	 * construct a response for an SNMP gateway request
@@ -33,19 +35,43 @@ public class SnmpGatewayResponse {
 	 * @param requestVbs the set of requested variable bindings (varbinds)
 	 * @param response the response PDU received for the associated request
 	 */
-	@SuppressWarnings("unchecked")
 	public SnmpGatewayResponse(String requestType,
 							   long requestStart, long requestDuration,
 			                   String target,
 			                   Vector<String> requestVbs,
 			                   PDU response) {
 		
+		this(requestType, requestStart, requestDuration, target, requestVbs, response, false);
+	}
+	
+	/**
+	 * construct a response for an SNMP gateway request
+	 *  
+	 * @param requestType the request type (GET or GETNEXT)
+	 * @param requestStart the time in milliseconds when the request was sent
+	 * @param requestDuration the duration in millesconds between the time the
+	 * 				request was sent and a response was received
+	 * @param target the target SNMP Agent to which the request was sent
+	 * @param requestVbs the set of requested variable bindings (varbinds)
+	 * @param response the response PDU received for the associated request
+	 * @param cached true if the response was served from the gateway's
+	 * 				response cache rather than the target SNMP Agent
+	 */
+	@SuppressWarnings("unchecked")
+	public SnmpGatewayResponse(String requestType,
+							   long requestStart, long requestDuration,
+			                   String target,
+			                   Vector<String> requestVbs,
+			                   PDU response,
+			                   boolean cached) {
+		
 		this.requestType = new String(requestType);
 		this.requestStart = new Date(requestStart);
 		this.requestDuration = requestDuration;
 		this.target = new String(target);
 		this.requestVbs = (Vector<String> )requestVbs.clone();
 		this.response = response;	
+		this.cached = cached;
 	}
 
 	/**
@@ -72,6 +98,40 @@ public class SnmpGatewayResponse {
 		return new String(Long.toString(this.requestDuration) + " milliseconds");
 	}
 	
+	/**
+	 * get the duration between the time the request was sent and the
+	 * response received
+	 * @return the duration in nanoseconds, or in whole milliseconds if the
+	 *         request was not timed more precisely
+	 */
+	public long getDurationNanos() {
+		return (this.requestNanos >= 0) ? this.requestNanos : this.requestDuration * 1000000L;
+	}
+	
+	/**
+	 * record the duration measured in nanoseconds
+	 * @param nanos the duration in nanoseconds
+	 */
+	void setDurationNanos(long nanos) {
+		this.requestNanos = nanos;
+	}
+	
+	/**
+	 * determine whether this response was served from the gateway's response cache
+	 * @return true if the response was served from the response cache
+	 */
+	public boolean isCached() {
+		return this.cached;
+	}
+	
+	/**
+	 * get the response PDU received for the request
+	 * @return the response PDU, or null if no response was received
+	 */
+	PDU getResponsePDU() {
+		return this.response;
+	}
+	
 	/**
 	 * get the request type of the original request sent for this response
 	 * @return the request type of the original request
@@ -165,6 +225,7 @@ public class SnmpGatewayResponse {
 		return new String(this.getRequestType() + " sent to " + this.getTarget() +
 				   "\n\t started at " + this.getStart() +
 				   " response received after " + this.getDuration() +
+				   (this.cached ? " from cache" : "") +
 				   "\n\t with error_status=" + this.getErrorStatusText() + 
 				   " and error_index=" + this.getErrorIndex() +
 				   "\n\t and varbindlist " + this.getResponseVarbinds());
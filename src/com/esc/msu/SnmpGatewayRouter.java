@@ -0,0 +1,319 @@
+package com.esc.msu;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.Vector;
+
+import org.snmp4j.smi.OID;
+
+/**
+ * routes SNMP event notifications to CFC listeners according to routing rules
+ * configured in the gateway configuration file.
+ * <p>
+ * Each rule is named and configured with the properties
+ * <ul>
+ * <li>route.name.cfc - the path of the CFC receiving matching notifications (required)</li>
+ * <li>route.name.method - the CFC function to call; defaults to the event function</li>
+ * <li>route.name.oid - comma separated trap OID prefixes; an SNMPv1 trap is
+ *     matched on its SNMPv2 trap OID (RFC 3584), so an enterprise prefix
+ *     matches the enterprise's specific traps</li>
+ * <li>route.name.subnet - comma separated sender subnets, as address/prefix length</li>
+ * <li>route.name.version - comma separated SNMP versions- v1, v2c and v3</li>
+ * </ul>
+ * A criterion that is not configured matches every notification.  A
+ * notification is passed to every rule it matches, once per CFC function.
+ * <p>
+ * The rules are compiled into a trie keyed on the trap OID prefixes, so
+ * finding the candidate rules for a notification costs a single walk down
+ * its trap OID; only the candidates' subnets and versions are then checked.
+ */
+public class SnmpGatewayRouter {
+
+	/**
+	 * a compiled routing rule
+	 */
+	static class Rule {
+		private final String name;
+		private final String cfcPath;
+		private final String cfcMethod;
+		private final byte[][] networks;
+		private final int[] prefixLengths;
+		private final String[] versions;
+
+		Rule(String name, String cfcPath, String cfcMethod,
+			 byte[][] networks, int[] prefixLengths, String[] versions) {
+			this.name = name;
+			this.cfcPath = cfcPath;
+			this.cfcMethod = cfcMethod;
+			this.networks = networks;
+			this.prefixLengths = prefixLengths;
+			this.versions = versions;
+		}
+
+		String getName() {
+			return this.name;
+		}
+
+		String getCfcPath() {
+			return this.cfcPath;
+		}
+
+		/**
+		 * get the CFC function of this rule
+		 * @return the CFC function, or null for the event function
+		 */
+		String getCfcMethod() {
+			return this.cfcMethod;
+		}
+
+		/**
+		 * check the sender and version criteria of this rule
+		 */
+		boolean matches(byte[] sender, String version) {
+			if (this.versions != null) {
+				boolean found = false;
+				for (String v : this.versions) {
+					if (v.equals(version)) {
+						found = true;
+						break;
+					}
+				}
+				if (!found) {
+					return false;
+				}
+			}
+			if (this.networks != null) {
+				if (sender == null) {
+					return false;
+				}
+				for (int i = 0; i < this.networks.length; i++) {
+					if (SnmpGatewayRouter.inSubnet(sender, this.networks[i], this.prefixLengths[i])) {
+						return true;
+					}
+				}
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * a node of the trap OID prefix trie
+	 */
+	private static class Node {
+		final HashMap<Integer, Node> children = new HashMap<Integer, Node>(4);
+		final Vector<Rule> rules = new Vector<Rule>(1);
+	}
+
+	private final Node root = new Node();
+	private final int ruleCount;
+
+	private SnmpGatewayRouter(int ruleCount) {
+		this.ruleCount = ruleCount;
+	}
+
+	/**
+	 * compile the routing rules of a gateway configuration
+	 *
+	 * @param properties the gateway configuration
+	 * @return the router, or null if no routing rules are configured
+	 *
+	 * @throws IllegalArgumentException if a routing rule is invalid
+	 */
+	static SnmpGatewayRouter compile(Properties properties) {
+		// collect the rule names, sorted so that rules are applied in a stable order
+		TreeMap<String, String> names = new TreeMap<String, String>();
+		Enumeration<?> keys = properties.propertyNames();
+		while (keys.hasMoreElements()) {
+			String key = (String )keys.nextElement();
+			if (key.startsWith("route.")) {
+				int dot = key.lastIndexOf('.');
+				if (dot > 6) {
+					String name = key.substring(6, dot);
+					names.put(name, name);
+				}
+			}
+		}
+		if (names.isEmpty()) {
+			return null;
+		}
+
+		SnmpGatewayRouter router = new SnmpGatewayRouter(names.size());
+		for (String name : names.keySet()) {
+			String prefix = "route." + name + ".";
+			String cfcPath = properties.getProperty(prefix + "cfc", "").trim();
+			if (cfcPath.length() == 0) {
+				throw new IllegalArgumentException("Routing rule " + name + " has no cfc");
+			}
+			String cfcMethod = properties.getProperty(prefix + "method", "").trim();
+
+			byte[][] networks = null;
+			int[] prefixLengths = null;
+			Vector<String> subnets = SnmpGatewayRouter.split(properties.getProperty(prefix + "subnet"));
+			if (subnets != null) {
+				networks = new byte[subnets.size()][];
+				prefixLengths = new int[subnets.size()];
+				for (int i = 0; i < subnets.size(); i++) {
+					SnmpGatewayRouter.parseSubnet(name, subnets.get(i), networks, prefixLengths, i);
+				}
+			}
+
+			String[] versions = null;
+			Vector<String> v = SnmpGatewayRouter.split(properties.getProperty(prefix + "version"));
+			if (v != null) {
+				versions = new String[v.size()];
+				for (int i = 0; i < versions.length; i++) {
+					versions[i] = v.get(i).toLowerCase();
+					if (!versions[i].equals("v1") && !versions[i].equals("v2c") && !versions[i].equals("v3")) {
+						throw new IllegalArgumentException("Routing rule " + name + " has invalid version " + v.get(i));
+					}
+				}
+			}
+
+			Rule rule = new Rule(name, cfcPath, (cfcMethod.length() > 0) ? cfcMethod : null,
+								 networks, prefixLengths, versions);
+
+			Vector<String> oids = SnmpGatewayRouter.split(properties.getProperty(prefix + "oid"));
+			if (oids == null) {
+				router.root.rules.add(rule);
+			} else {
+				for (String o : oids) {
+					OID oid = new OID(o);
+					if (!oid.isValid()) {
+						throw new IllegalArgumentException("Routing rule " + name + " has invalid oid " + o);
+					}
+					router.insert(oid, rule);
+				}
+			}
+		}
+		return router;
+	}
+
+	/**
+	 * add a rule to the trie node of a trap OID prefix
+	 */
+	private void insert(OID prefix, Rule rule) {
+		Node n = this.root;
+		for (int i = 0; i < prefix.size(); i++) {
+			Integer k = Integer.valueOf(prefix.get(i));
+			Node child = n.children.get(k);
+			if (child == null) {
+				child = new Node();
+				n.children.put(k, child);
+			}
+			n = child;
+		}
+		if (!n.rules.contains(rule)) {
+			n.rules.add(rule);
+		}
+	}
+
+	/**
+	 * find the routing rules matched by an SNMP event notification
+	 *
+	 * @param e the SNMP event notification
+	 * @return the matched rules, one per CFC path and function; empty if none match
+	 */
+	Vector<Rule> route(SnmpGatewayEvent e) {
+		Vector<Rule> matched = new Vector<Rule>(2);
+		byte[] sender = e.getSenderAddressBytes();
+		String version = e.getVersionName();
+
+		this.collect(this.root, sender, version, matched);
+		OID trapOID = e.getTrapOID();
+		if (trapOID != null) {
+			Node n = this.root;
+			for (int i = 0; i < trapOID.size(); i++) {
+				n = n.children.get(Integer.valueOf(trapOID.get(i)));
+				if (n == null) {
+					break;
+				}
+				this.collect(n, sender, version, matched);
+			}
+		}
+		return matched;
+	}
+
+	private void collect(Node n, byte[] sender, String version, Vector<Rule> matched) {
+		for (Rule r : n.rules) {
+			if (r.matches(sender, version) && !this.isRouted(matched, r)) {
+				matched.add(r);
+			}
+		}
+	}
+
+	/**
+	 * check whether a notification is already routed to the CFC function of a rule
+	 */
+	private boolean isRouted(Vector<Rule> matched, Rule r) {
+		for (Rule m : matched) {
+			if (m.cfcPath.equals(r.cfcPath) &&
+				((m.cfcMethod == null) ? (r.cfcMethod == null) : m.cfcMethod.equals(r.cfcMethod))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * get the number of routing rules
+	 * @return the number of routing rules
+	 */
+	int size() {
+		return this.ruleCount;
+	}
+
+	private static Vector<String> split(String list) {
+		if (list == null || list.trim().length() == 0) {
+			return null;
+		}
+		Vector<String> v = new Vector<String>();
+		StringTokenizer st = new StringTokenizer(list, ", \t");
+		while (st.hasMoreTokens()) {
+			v.add(st.nextToken());
+		}
+		return v;
+	}
+
+	private static void parseSubnet(String name, String subnet, byte[][] networks, int[] prefixLengths, int i) {
+		int slash = subnet.indexOf('/');
+		String address = (slash < 0) ? subnet : subnet.substring(0, slash);
+		try {
+			networks[i] = InetAddress.getByName(address).getAddress();
+			prefixLengths[i] = (slash < 0) ? networks[i].length * 8 : Integer.parseInt(subnet.substring(slash + 1));
+		} catch (UnknownHostException e) {
+			throw new IllegalArgumentException("Routing rule " + name + " has invalid subnet " + subnet);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Routing rule " + name + " has invalid subnet " + subnet);
+		}
+		if (prefixLengths[i] < 0 || prefixLengths[i] > networks[i].length * 8) {
+			throw new IllegalArgumentException("Routing rule " + name + " has invalid subnet " + subnet);
+		}
+	}
+
+	/**
+	 * check whether an address lies in a subnet
+	 */
+	static boolean inSubnet(byte[] address, byte[] network, int prefixLength) {
+		if (address.length != network.length) {
+			return false;
+		}
+		int bytes = prefixLength / 8;
+		for (int i = 0; i < bytes; i++) {
+			if (address[i] != network[i]) {
+				return false;
+			}
+		}
+		int bits = prefixLength % 8;
+		if (bits != 0) {
+			int mask = (0xff << (8 - bits)) & 0xff;
+			return (address[bytes] & mask) == (network[bytes] & mask);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,202 @@
+package com.esc.msu;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.snmp4j.Target;
+import org.snmp4j.smi.Address;
+
+/**
+ * estimates the round-trip time to each target SNMP Agent and derives the
+ * request timeout and retries from it.
+ * <p>
+ * The smoothed round-trip time and its variance are maintained as for TCP
+ * (RFC 6298): the timeout is the smoothed round-trip time plus four times the
+ * variance, kept between the configured minimum and maximum.  A request that
+ * is not answered doubles the target's timeout.  Durations of requests that
+ * were retried are ambiguous and are not sampled.  A target that has failed
+ * to answer several requests in a row is sent requests without retries until
+ * it answers again, so a dead agent does not hold the caller for a whole
+ * retry chain.
+ * <p>
+ * At most maxTargets targets are tracked.  When the limit is reached the
+ * targets idle for longer than the idle time are evicted; a target for which
+ * there is still no room uses the initial timeout and is not sampled.
+ */
+public class SnmpGatewayRttEstimator {
+
+	/**
+	 * the number of consecutive unanswered requests after which a target is
+	 * sent requests without retries
+	 */
+	public final static int FAIL_FAST_THRESHOLD = 3;
+
+	/**
+	 * the round-trip time statistics of a single target SNMP Agent
+	 */
+	private static class Stats {
+		long srtt = -1;
+		long rttvar = 0;
+		long timeout;
+		int consecutiveTimeouts = 0;
+		volatile long lastUsed;
+
+		Stats(long timeout, long now) {
+			this.timeout = timeout;
+			this.lastUsed = now;
+		}
+	}
+
+	private final long initialTimeout;
+	private final long minTimeout;
+	private final long maxTimeout;
+	private final long idle;
+	private final int maxTargets;
+	private final ConcurrentHashMap<Address, Stats> targets;
+	private volatile long lastSweep = System.nanoTime();
+
+	/**
+	 * construct a round-trip time estimator
+	 *
+	 * @param initialTimeout the timeout in milliseconds for a target not yet sampled
+	 * @param minTimeout the smallest timeout in milliseconds ever used
+	 * @param maxTimeout the largest timeout in milliseconds ever used
+	 * @param idle the time in milliseconds after which an idle target may be evicted
+	 * @param maxTargets the maximum number of targets tracked
+	 */
+	SnmpGatewayRttEstimator(long initialTimeout, long minTimeout, long maxTimeout, long idle, int maxTargets) {
+		this.minTimeout = minTimeout;
+		this.maxTimeout = Math.max(minTimeout, maxTimeout);
+		this.initialTimeout = this.clamp(initialTimeout);
+		this.idle = TimeUnit.MILLISECONDS.toNanos(Math.max(1, idle));
+		this.maxTargets = Math.max(1, maxTargets);
+		this.targets = new ConcurrentHashMap<Address, Stats>(Math.min(this.maxTargets, 1024), 0.75f, 16);
+	}
+
+	private long clamp(long timeout) {
+		return Math.max(this.minTimeout, Math.min(this.maxTimeout, timeout));
+	}
+
+	/**
+	 * get the statistics of a target, tracking it if there is room
+	 *
+	 * @return the target's statistics, or null if there is no room to track it
+	 */
+	private Stats getStats(Address address) {
+		long now = System.nanoTime();
+		Stats s = this.targets.get(address);
+		if (s == null) {
+			if ((this.targets.size() >= this.maxTargets) && !this.sweep(now)) {
+				return null;
+			}
+			Stats created = new Stats(this.initialTimeout, now);
+			s = this.targets.putIfAbsent(address, created);
+			if (s == null) {
+				s = created;
+			}
+		}
+		s.lastUsed = now;
+		return s;
+	}
+
+	/**
+	 * evict the targets that have been idle, at most once per idle time
+	 *
+	 * @return true if there is now room for another target
+	 */
+	private boolean sweep(long now) {
+		long last = this.lastSweep;
+		if (now - last >= this.idle) {
+			synchronized (this) {
+				if (this.lastSweep == last) {
+					this.lastSweep = now;
+					Iterator<Stats> i = this.targets.values().iterator();
+					while (i.hasNext()) {
+						if (now - i.next().lastUsed > this.idle) {
+							i.remove();
+						}
+					}
+				}
+			}
+		}
+		return this.targets.size() < this.maxTargets;
+	}
+
+	/**
+	 * set the timeout and retries of a target from its round-trip time estimate
+	 *
+	 * @param target the SNMP4J target of the request about to be sent
+	 * @param retries the number of retries to use for a healthy target
+	 */
+	void adjust(Target target, int retries) {
+		Stats s = this.getStats(target.getAddress());
+		if (s == null) {
+			target.setTimeout(this.initialTimeout);
+			target.setRetries(retries);
+			return;
+		}
+		synchronized (s) {
+			target.setTimeout(s.timeout);
+			target.setRetries((s.consecutiveTimeouts >= SnmpGatewayRttEstimator.FAIL_FAST_THRESHOLD) ? 0 : retries);
+		}
+	}
+
+	/**
+	 * record the outcome of a request
+	 *
+	 * @param target the SNMP4J target to which the request was sent
+	 * @param duration the time in milliseconds from sending the request to its completion
+	 * @param answered true if a response was received
+	 */
+	void sample(Target target, long duration, boolean answered) {
+		Stats s = this.getStats(target.getAddress());
+		if (s == null) {
+			return;
+		}
+		synchronized (s) {
+			if (!answered) {
+				s.consecutiveTimeouts++;
+				s.timeout = this.clamp(s.timeout * 2);
+			} else {
+				s.consecutiveTimeouts = 0;
+				if (duration < target.getTimeout()) {
+					// answered on the first attempt, so the duration is a true round-trip time
+					if (s.srtt < 0) {
+						s.srtt = duration;
+						s.rttvar = duration / 2;
+					} else {
+						s.rttvar = (3 * s.rttvar + Math.abs(s.srtt - duration)) / 4;
+						s.srtt = (7 * s.srtt + duration) / 8;
+					}
+					s.timeout = this.clamp(s.srtt + Math.max(1, 4 * s.rttvar));
+				}
+			}
+		}
+	}
+
+	/**
+	 * get the round-trip time estimate of a target SNMP Agent as a
+	 * HashMap<String, Long> with the entries SmoothedRtt, RttVariance,
+	 * Timeout and ConsecutiveTimeouts
+	 *
+	 * @param address the address of the target SNMP Agent
+	 * @return the round-trip time estimate; SmoothedRtt is -1 until sampled
+	 */
+	HashMap<String, Long> getEstimate(Address address) {
+		HashMap<String, Long> m = new HashMap<String, Long>();
+		Stats s = this.targets.get(address);
+		if (s == null) {
+			// not tracked- report the defaults without tracking it
+			s = new Stats(this.initialTimeout, 0);
+		}
+		synchronized (s) {
+			m.put("SmoothedRtt", Long.valueOf(s.srtt));
+			m.put("RttVariance", Long.valueOf(s.rttvar));
+			m.put("Timeout", Long.valueOf(s.timeout));
+			m.put("ConsecutiveTimeouts", Long.valueOf(s.consecutiveTimeouts));
+		}
+		return m;
+	}
+}
@@ -0,0 +1,133 @@
+package com.esc.msu;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+/**
+ * reads the kernel's UDP receive counters from /proc (Linux only), so that
+ * socket receive buffers can be sized from observed drops.
+ * <p>
+ * For the sockets bound to the listener ports, /proc/net/udp and
+ * /proc/net/udp6 give the bytes waiting in the receive queue and the number
+ * of datagrams dropped because the receive buffer was full.  /proc/net/snmp
+ * gives the system-wide InErrors and RcvbufErrors counters.
+ */
+public class SnmpGatewayUdpStatistics {
+
+	private SnmpGatewayUdpStatistics() {
+	}
+
+	/**
+	 * get the UDP receive counters as a HashMap<String, Long> with the entries
+	 * RxQueue and Drops (summed over the sockets bound to the ports) and
+	 * InErrors and RcvbufErrors (system wide).  Entries whose /proc file
+	 * cannot be read are left out.
+	 *
+	 * @param ports the local ports of the listening sockets
+	 * @return the UDP receive counters
+	 */
+	static HashMap<String, Long> read(Vector<Integer> ports) {
+		HashMap<String, Long> stats = new HashMap<String, Long>();
+		long[] sockets = new long[2];
+		boolean found = SnmpGatewayUdpStatistics.readSockets("/proc/net/udp", ports, sockets);
+		found |= SnmpGatewayUdpStatistics.readSockets("/proc/net/udp6", ports, sockets);
+		if (found) {
+			stats.put("RxQueue", Long.valueOf(sockets[0]));
+			stats.put("Drops",   Long.valueOf(sockets[1]));
+		}
+		SnmpGatewayUdpStatistics.readCounters("/proc/net/snmp", stats);
+		return stats;
+	}
+
+	/**
+	 * sum the receive queue and drops of the sockets bound to the ports
+	 *
+	 * @return true if the file was read
+	 */
+	private static boolean readSockets(String file, Vector<Integer> ports, long[] sockets) {
+		BufferedReader r = null;
+		try {
+			r = new BufferedReader(new FileReader(file));
+			String line = r.readLine(); // header
+			while ((line = r.readLine()) != null) {
+				// sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode ref pointer drops
+				StringTokenizer st = new StringTokenizer(line);
+				if (st.countTokens() < 13) {
+					continue;
+				}
+				st.nextToken();
+				String local = st.nextToken();
+				int colon = local.lastIndexOf(':');
+				if (colon < 0 || !ports.contains(Integer.valueOf(Integer.parseInt(local.substring(colon + 1), 16)))) {
+					continue;
+				}
+				st.nextToken();
+				st.nextToken();
+				String queues = st.nextToken();
+				sockets[0] += Long.parseLong(queues.substring(queues.indexOf(':') + 1), 16);
+				for (int i = 0; i < 7; i++) {
+					st.nextToken();
+				}
+				sockets[1] += Long.parseLong(st.nextToken());
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		} catch (RuntimeException e) {
+			return false;
+		} finally {
+			SnmpGatewayUdpStatistics.close(r);
+		}
+	}
+
+	/**
+	 * add the InErrors and RcvbufErrors counters of the Udp lines of /proc/net/snmp
+	 */
+	private static void readCounters(String file, HashMap<String, Long> stats) {
+		BufferedReader r = null;
+		try {
+			r = new BufferedReader(new FileReader(file));
+			String names = null;
+			String line;
+			while ((line = r.readLine()) != null) {
+				if (!line.startsWith("Udp:")) {
+					continue;
+				}
+				if (names == null) {
+					names = line;
+					continue;
+				}
+				StringTokenizer n = new StringTokenizer(names);
+				StringTokenizer v = new StringTokenizer(line);
+				while (n.hasMoreTokens() && v.hasMoreTokens()) {
+					String name = n.nextToken();
+					String value = v.nextToken();
+					if (name.equals("InErrors") || name.equals("RcvbufErrors")) {
+						stats.put(name, Long.valueOf(value));
+					}
+				}
+				break;
+			}
+		} catch (IOException e) {
+			// not available on this system
+		} catch (RuntimeException e) {
+			// unexpected format
+		} finally {
+			SnmpGatewayUdpStatistics.close(r);
+		}
+	}
+
+	private static void close(BufferedReader r) {
+		if (r != null) {
+			try {
+				r.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package com.esc.msu;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.UdpTransportMapping;
+
+/**
+ * a UDP transport for the SNMP Gateway event listener which receives into a
+ * single reused direct buffer.
+ * <p>
+ * Unlike DefaultUdpTransportMapping, no heap byte array is allocated per
+ * datagram: each datagram is read from a DatagramChannel into the direct
+ * buffer and passed to the message dispatcher before the next one is read.
+ * The dispatcher must be done with the buffer when it returns;
+ * SnmpGatewayLaneDispatcher copies the datagram into a reused buffer from
+ * its lane's pool (or into the journal) and returns.  The socket receive buffer (SO_RCVBUF) is set before the
+ * socket is bound, so that the kernel can absorb bursts of datagrams while
+ * the reader is busy.
+ * <p>
+ * A datagram that cannot be received or processed does not end the
+ * transport.  Each such failure is counted as a ReceiveError of the gateway's
+ * metrics; the first is logged, and then the number since the last report,
+ * with the latest failure, at most once a minute.
+ */
+public class SnmpGatewayUdpTransport extends UdpTransportMapping {
+
+	/**
+	 * the shortest time in nanoseconds between reports of failed receives
+	 */
+	private final static long REPORT_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+	private final SnmpGateway sg;
+	private final DatagramChannel channel;
+	private final ByteBuffer buffer;
+	private volatile Thread reader;
+	// read only by the reader thread and, once it has finished, by close()
+	private long failures = 0;
+	private long lastReport;
+	private Exception lastFailure;
+
+	/**
+	 * construct a direct-buffer UDP transport bound to a local address
+	 *
+	 * @param sg the SNMP Gateway which counts and logs failed receives
+	 * @param udpAddress the local address to listen on
+	 * @param receiveBufferSize the requested socket receive buffer size in
+	 *        bytes, or 0 for the system default
+	 *
+	 * @throws IOException if the socket cannot be bound
+	 */
+	SnmpGatewayUdpTransport(SnmpGateway sg, UdpAddress udpAddress, int receiveBufferSize) throws IOException {
+		super(udpAddress);
+		this.sg = sg;
+		this.lastReport = System.nanoTime() - SnmpGatewayUdpTransport.REPORT_INTERVAL;
+		this.channel = DatagramChannel.open();
+		try {
+			if (receiveBufferSize > 0) {
+				this.channel.socket().setReceiveBufferSize(receiveBufferSize);
+			}
+			this.channel.socket().bind(new InetSocketAddress(udpAddress.getInetAddress(), udpAddress.getPort()));
+		} catch (IOException e) {
+			this.channel.close();
+			throw e;
+		}
+		this.buffer = ByteBuffer.allocateDirect(this.getMaxInboundMessageSize());
+	}
+
+	/**
+	 * send a message to an SNMP entity
+	 */
+	public void sendMessage(Address address, byte[] message) throws IOException {
+		UdpAddress a = (UdpAddress )address;
+		this.channel.send(ByteBuffer.wrap(message), new InetSocketAddress(a.getInetAddress(), a.getPort()));
+	}
+
+	/**
+	 * start the thread reading datagrams from the socket
+	 */
+	public synchronized void listen() throws IOException {
+		if (this.reader != null) {
+			throw new IOException("Transport is already listening on " + this.udpAddress);
+		}
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				SnmpGatewayUdpTransport.this.read();
+			}
+		}, "SnmpGatewayUdpTransport_" + this.udpAddress);
+		t.setDaemon(true);
+		this.reader = t;
+		t.start();
+	}
+
+	/**
+	 * read datagrams and pass each to the message dispatchers until closed
+	 */
+	private void read() {
+		while (this.channel.isOpen()) {
+			try {
+				this.buffer.clear();
+				SocketAddress from = this.channel.receive(this.buffer);
+				if (!(from instanceof InetSocketAddress)) {
+					continue;
+				}
+				this.buffer.flip();
+				InetSocketAddress isa = (InetSocketAddress )from;
+				this.fireProcessMessage(new UdpAddress(isa.getAddress(), isa.getPort()), this.buffer);
+			} catch (ClosedChannelException e) {
+				break;
+			} catch (IOException e) {
+				// a failed receive (e.g. an ICMP error) does not end the transport
+				this.failed(e);
+			} catch (RuntimeException e) {
+				// a message that cannot be processed does not end the transport
+				this.failed(e);
+			}
+		}
+	}
+
+	/**
+	 * count a failed receive, and report the failures if none have been
+	 * reported for a while
+	 */
+	private void failed(Exception e) {
+		this.sg.getMetricsCounters().receiveErrors.increment();
+		this.failures++;
+		this.lastFailure = e;
+		long now = System.nanoTime();
+		if (now - this.lastReport >= SnmpGatewayUdpTransport.REPORT_INTERVAL) {
+			this.lastReport = now;
+			this.report();
+		}
+	}
+
+	/**
+	 * log the failed receives since the last report
+	 */
+	private void report() {
+		if (this.failures > 0) {
+			this.sg.logWarn("Failed to receive or process " + this.failures + " datagram(s) on " + this.udpAddress +
+							", most recently: " + this.lastFailure);
+			this.failures = 0;
+		}
+	}
+
+	/**
+	 * close the socket and wait for the reading thread to finish
+	 */
+	public void close() throws IOException {
+		Thread t;
+
+		synchronized (this) {
+			t = this.reader;
+			this.reader = null;
+		}
+		this.channel.close();
+		if ((t != null) && (t != Thread.currentThread())) {
+			try {
+				t.join();
+				this.report();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public boolean isListening() {
+		return this.reader != null;
+	}
+
+	/**
+	 * get the socket receive buffer size actually granted by the system
+	 *
+	 * @return the receive buffer size in bytes, or -1 if the socket is closed
+	 */
+	public int getReceiveBufferSize() {
+		try {
+			return this.channel.socket().getReceiveBufferSize();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+}
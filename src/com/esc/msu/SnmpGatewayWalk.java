@@ -0,0 +1,174 @@
+package com.esc.msu;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * comprises a walk of an SNMP Agent MIB subtree carried out by the SNMP gateway.
+ * <p>
+ * The subtree is retrieved one page at a time so that only the current page
+ * is held in memory.  Each page is fetched with a single GetBulk-Request for
+ * SNMP v2c agents, or with a sequence of GetNext-Requests for SNMP v1 agents.
+ * Each request takes its timeout from the gateway's round-trip time estimator
+ * as it stands when the request is sent, not when the walk was created, and
+ * is sampled by the estimator as it completes.
+ * <p>
+ * Typical use from CFML:
+ * <pre>
+ *   walk = helper.walk(cred, "1.3.6.1.2.1.2.2");
+ *   while (walk.hasMorePages()) {
+ *       page = walk.nextPage();
+ *       ...
+ *   }
+ * </pre>
+ */
+public class SnmpGatewayWalk {
+
+	/**
+	 * the default number of varbinds returned per page
+	 */
+	public final static int DEFAULT_PAGE_SIZE = 50;
+
+	private final Snmp session;
+	private final Target target;
+	private final SnmpGatewayCredentials cred;
+	private final OID root;
+	private final int pageSize;
+	private final SnmpGateway gateway;
+	private OID next;
+	private boolean finished = false;
+	private PDU lastResponse = null;
+	private int varbindCount = 0;
+
+	/**
+	 * construct a walk of an SNMP Agent MIB subtree
+	 *
+	 * @param session the SNMP session on which requests are sent
+	 * @param target the SNMP4J target for the SNMP Agent
+	 * @param cred the set of SNMP credentials for the target SNMP Agent
+	 * @param rootOid the OID of the root of the subtree to walk
+	 * @param pageSize the maximum number of varbinds returned per page
+	 * @param gateway the gateway counting and sampling the requests sent
+	 */
+	SnmpGatewayWalk(Snmp session, Target target, SnmpGatewayCredentials cred,
+					String rootOid, int pageSize, SnmpGateway gateway) {
+		this.session = session;
+		this.target = target;
+		this.cred = cred;
+		this.root = new OID(rootOid);
+		this.next = this.root;
+		this.pageSize = (pageSize > 0) ? pageSize : SnmpGatewayWalk.DEFAULT_PAGE_SIZE;
+		this.gateway = gateway;
+	}
+
+	/**
+	 * determine whether the walk may have more varbinds to retrieve
+	 *
+	 * @return true until the end of the subtree has been reached
+	 */
+	public boolean hasMorePages() {
+		return !this.finished;
+	}
+
+	/**
+	 * retrieve the next page of the subtree as a LinkedHashMap<String(OID), String(Value)>
+	 * in lexicographic OID order
+	 *
+	 * @return the next page of varbinds- empty once the end of the subtree is reached
+	 *
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public LinkedHashMap<String, String> nextPage() throws IOException {
+		LinkedHashMap<String, String> page = new LinkedHashMap<String, String>();
+
+		while (!this.finished && (page.size() < this.pageSize)) {
+			PDU request;
+			if (this.cred.getSnmpVersion() == SnmpGatewayCredentials.SNMP_VERSION_1) {
+				request = this.cred.createPDU(PDU.GETNEXT);
+			} else {
+				request = this.cred.createPDU(PDU.GETBULK);
+				request.setNonRepeaters(0);
+				request.setMaxRepetitions(this.pageSize - page.size());
+			}
+			request.add(new VariableBinding(this.next));
+
+			SnmpGatewayRttEstimator rtt = this.gateway.getRttEstimator();
+			if (rtt != null) {
+				rtt.adjust(this.target, this.gateway.getRequestRetries());
+			}
+			PDU response;
+			long start = System.nanoTime();
+			try {
+				response = this.session.send(request, this.target).getResponse();
+			} catch (IOException e) {
+				this.gateway.getMetricsCounters().requestFailed("WALK");
+				throw e;
+			}
+			long nanos = System.nanoTime() - start;
+			this.gateway.getMetricsCounters().request("WALK", this.cred.getTargetAddress(), response, nanos);
+			this.gateway.requestCompleted(this.target, nanos / 1000000L, response);
+			this.lastResponse = response;
+			if ((response == null) || (response.getErrorStatus() != PDU.noError) ||
+				(response.size() == 0)) {
+				// a timeout, an error, or noSuchName at the end of a v1 agent's MIB view
+				this.finished = true;
+				break;
+			}
+
+			Vector<VariableBinding> vbs = response.getVariableBindings();
+			for (VariableBinding vb : vbs) {
+				OID o = vb.getOid();
+				if (vb.isException() || !o.startsWith(this.root) || (o.compareTo(this.next) <= 0)) {
+					// past the end of the subtree, or an agent returning OIDs out of order
+					this.finished = true;
+					break;
+				}
+				page.put(o.toString(), vb.getVariable().toString());
+				this.next = o;
+				this.varbindCount++;
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * get the OID of the root of the subtree being walked
+	 * @return the OID of the root of the subtree
+	 */
+	public String getRootOid() {
+		return this.root.toString();
+	}
+
+	/**
+	 * get the number of varbinds retrieved so far
+	 * @return the number of varbinds retrieved so far
+	 */
+	public int getVarbindCount() {
+		return this.varbindCount;
+	}
+
+	/**
+	 * get the text describing how the most recent request of the walk ended
+	 * <p>
+	 * @return failure the string "no response was received"
+	 *  <br>   success string containing the error-status text
+	 */
+	public String getErrorStatusText() {
+		String s;
+
+		if (this.lastResponse != null) {
+			s = new String(this.lastResponse.getErrorStatusText());
+		} else {
+			s = new String("no response was received");
+		}
+		return s;
+	}
+}